@@ -0,0 +1,21 @@
+package benchmark;
+
+import java.util.Arrays;
+
+import org.openjdk.jmh.Main;
+
+/**
+ * Runs JMH with the command line arguments and the GC profiler added, so every run reports the allocation
+ * rate (gc.alloc.rate.norm is bytes per operation) next to throughput and average time
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String[] withProfiler = Arrays.copyOf(new String[]{"-prof", "gc"}, args.length + 2);
+        System.arraycopy(args, 0, withProfiler, 2, args.length);
+        Main.main(withProfiler);
+    }
+}
@@ -0,0 +1,336 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import hello.Application;
+import model.Metrics;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPatch;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import service.MeasurementService;
+import util.WeatherTrackerUtil;
+
+/**
+ * End to end load test of the REST layer: starts the application on a random port, preloads it with synthetic
+ * readings and sends a weighted mix of POST / GET / PUT / PATCH / DELETE /measurements and GET /stats requests
+ * at a fixed rate for a fixed time. The schedule is open loop, every request has an intended start time and its
+ * latency is measured from that time, so a stalled server shows up as latency instead of as a lower request rate
+ * (no coordinated omission). Latencies go into one HdrHistogram per operation; p50, p99, p99.9 and max are
+ * printed and written as JSON to the report file for comparing builds.
+ *
+ * Arguments are key=value pairs, the defaults are
+ * rate=500 duration=30 warmup=10 clients=256 preload=100000 store=skiplist report=target/load-test-report.json
+ * mix=post:20,get:40,put:5,patch:15,delete:5,stats:15
+ *
+ * Every request is sent from its own virtual thread, clients caps the connections open at the same time.
+ */
+public final class LoadTest {
+
+    private static final long FIRST_TIMESTAMP = Instant.parse("2000-01-01T00:00:00Z").toEpochMilli();
+    private static final long POST_TIMESTAMP = Instant.parse("2100-01-01T00:00:00Z").toEpochMilli();
+    private static final long INTERVAL_MILLIS = 60_000L;
+    private static final long DAY_MILLIS = 86_400_000L;
+    private static final int PRELOAD_BATCH_SIZE = 10_000;
+
+    enum Operation {
+        POST, GET, PUT, PATCH, DELETE, STATS
+    }
+
+    private final Map<String, String> options;
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+    private final Map<Operation, Histogram> histograms = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+    private final AtomicLong posted = new AtomicLong();
+    private final AtomicLong deleted = new AtomicLong();
+    private String baseUrl;
+    private CloseableHttpClient httpClient;
+    private int preloaded;
+
+    private LoadTest(Map<String, String> options) {
+        this.options = options;
+        List<Operation> mixOperations = new ArrayList<>();
+        List<Integer> mixWeights = new ArrayList<>();
+        int total = 0;
+        for (String entry : options.get("mix").split(",")) {
+            String[] operationAndWeight = entry.split(":");
+            total += Integer.parseInt(operationAndWeight[1].trim());
+            mixOperations.add(Operation.valueOf(operationAndWeight[0].trim().toUpperCase()));
+            mixWeights.add(total);
+        }
+        this.operations = mixOperations.toArray(new Operation[0]);
+        this.cumulativeWeights = mixWeights.stream().mapToInt(Integer::intValue).toArray();
+        for (Operation operation : Operation.values()) {
+            histograms.put(operation, new ConcurrentHistogram(3));
+            errors.put(operation, new LongAdder());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("rate", "500");
+        options.put("duration", "30");
+        options.put("warmup", "10");
+        options.put("clients", "256");
+        options.put("preload", "100000");
+        options.put("store", "skiplist");
+        options.put("report", "target/load-test-report.json");
+        options.put("mix", "post:20,get:40,put:5,patch:15,delete:5,stats:15");
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0 || !options.containsKey(arg.substring(0, separator))) {
+                throw new IllegalArgumentException("Unknown argument " + arg + ", expected key=value with a key of " + options.keySet());
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        new LoadTest(options).run();
+    }
+
+    private void run() throws Exception {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+                .properties(
+                        "server.port=0",
+                        "measurement.store=" + options.get("store"),
+                        "spring.main.banner-mode=off",
+                        "logging.level.root=WARN")
+                .run();
+        int clients = Integer.parseInt(options.get("clients"));
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(clients);
+        connectionManager.setDefaultMaxPerRoute(clients);
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            baseUrl = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+            httpClient = HttpClients.custom().setConnectionManager(connectionManager).build();
+            preload(context.getBean(MeasurementService.class), Integer.parseInt(options.get("preload")));
+            long sent = drive(executor);
+            report(sent);
+        } finally {
+            executor.shutdownNow();
+            if (httpClient != null) {
+                httpClient.close();
+            }
+            context.close();
+        }
+    }
+
+    private void preload(MeasurementService measurementService, int count) {
+        WeatherGenerator weatherGenerator = new WeatherGenerator(42L);
+        long[] timestamps = new long[PRELOAD_BATCH_SIZE];
+        Metrics[] metrics = new Metrics[PRELOAD_BATCH_SIZE];
+        for (int loaded = 0; loaded < count; loaded += PRELOAD_BATCH_SIZE) {
+            int batch = Math.min(PRELOAD_BATCH_SIZE, count - loaded);
+            weatherGenerator.fill(timestamps, metrics, batch, FIRST_TIMESTAMP + loaded * INTERVAL_MILLIS, INTERVAL_MILLIS);
+            measurementService.addMeasurements(Arrays.copyOf(timestamps, batch), Arrays.copyOf(metrics, batch));
+        }
+        preloaded = Math.max(1, count);
+    }
+
+    /**
+     * Sends requests at their intended start times until warmup plus duration is over, returns how many were sent.
+     * Requests started during the warmup are not recorded.
+     */
+    private long drive(ExecutorService executor) throws InterruptedException {
+        double rate = Double.parseDouble(options.get("rate"));
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(Long.parseLong(options.get("warmup")));
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(Long.parseLong(options.get("duration")));
+        long sent = 0;
+        for (long i = 0; ; i++) {
+            long intendedStart = start + (long) (i * 1e9 / rate);
+            if (intendedStart >= end) {
+                break;
+            }
+            long wait = intendedStart - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            Operation operation = pickOperation();
+            boolean recorded = intendedStart >= measureFrom;
+            sent += recorded ? 1 : 0;
+            executor.execute(() -> {
+                boolean expected;
+                try {
+                    expected = send(operation);
+                } catch (IOException e) {
+                    expected = false;
+                }
+                if (recorded) {
+                    histograms.get(operation).recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedStart));
+                    if (!expected) {
+                        errors.get(operation).increment();
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        return sent;
+    }
+
+    private Operation pickOperation() {
+        int pick = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (pick < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+
+    /**
+     * Sends one request of the operation, returns whether the response had the status the operation expects.
+     * PUT, PATCH and GET use preloaded readings, DELETE takes back readings posted by the load test so the two
+     * never race for the same timestamp.
+     */
+    private boolean send(Operation operation) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String preloadedTimestamp = format(FIRST_TIMESTAMP + random.nextInt(preloaded) * INTERVAL_MILLIS);
+        switch (operation) {
+            case POST: {
+                String timestamp = format(POST_TIMESTAMP + posted.getAndIncrement() * INTERVAL_MILLIS);
+                return execute(withBody(new HttpPost(baseUrl + "/measurements"), measurement(timestamp, true))) == 201;
+            }
+            case GET:
+                return execute(new HttpGet(baseUrl + "/measurements/" + preloadedTimestamp)) == 200;
+            case PUT:
+                return execute(withBody(new HttpPut(baseUrl + "/measurements/" + preloadedTimestamp),
+                        measurement(preloadedTimestamp, true))) == 204;
+            case PATCH:
+                return execute(withBody(new HttpPatch(baseUrl + "/measurements/" + preloadedTimestamp),
+                        measurement(preloadedTimestamp, false))) == 204;
+            case DELETE: {
+                // a delete may overtake the post of its timestamp, then there is nothing to delete yet
+                String timestamp = format(POST_TIMESTAMP + deleted.getAndIncrement() * INTERVAL_MILLIS);
+                int status = execute(new HttpDelete(baseUrl + "/measurements/" + timestamp));
+                return status == 204 || status == 404;
+            }
+            case STATS: {
+                int days = Math.max(1, (int) ((long) preloaded * INTERVAL_MILLIS / DAY_MILLIS));
+                int length = 1 + random.nextInt(Math.min(7, days));
+                long from = FIRST_TIMESTAMP + random.nextInt(Math.max(1, days - length + 1)) * DAY_MILLIS;
+                return execute(new HttpGet(baseUrl + "/stats?metric=temperature&metric=dewPoint&stat=min&stat=max&stat=average"
+                        + "&fromDateTime=" + format(from) + "&toDateTime=" + format(from + length * DAY_MILLIS))) == 200;
+            }
+            default:
+                throw new IllegalStateException("Unknown operation " + operation);
+        }
+    }
+
+    private int execute(HttpUriRequest request) throws IOException {
+        try (CloseableHttpResponse response = httpClient.execute(request)) {
+            HttpEntity entity = response.getEntity();
+            if (entity != null) {
+                EntityUtils.consume(entity); // returns the connection to the pool
+            }
+            return response.getStatusLine().getStatusCode();
+        }
+    }
+
+    private static HttpUriRequest withBody(HttpEntityEnclosingRequestBase request, String body) {
+        request.setEntity(new StringEntity(body, ContentType.APPLICATION_JSON));
+        return request;
+    }
+
+    private static String measurement(String timestamp, boolean complete) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        float temperature = 10f + random.nextInt(200) / 10f;
+        if (!complete) {
+            return "{\"timestamp\":\"" + timestamp + "\",\"temperature\":" + temperature + "}";
+        }
+        return "{\"timestamp\":\"" + timestamp + "\",\"temperature\":" + temperature
+                + ",\"dewPoint\":" + (temperature - 5f) + ",\"precipitation\":" + random.nextInt(30) / 10f + "}";
+    }
+
+    private static String format(long epochMillis) {
+        return WeatherTrackerUtil.convertEpochMillisToString(epochMillis);
+    }
+
+    private void report(long sent) throws IOException {
+        Histogram all = new Histogram(3);
+        Map<String, Object> operationReports = new LinkedHashMap<>();
+        System.out.printf("%-10s %10s %8s %12s %12s %12s %12s%n", "operation", "count", "errors", "p50 us", "p99 us", "p99.9 us", "max us");
+        for (Operation operation : Operation.values()) {
+            Histogram histogram = histograms.get(operation);
+            if (histogram.getTotalCount() == 0) {
+                continue;
+            }
+            all.add(histogram);
+            operationReports.put(operation.name().toLowerCase(), summary(histogram, errors.get(operation).sum()));
+            print(operation.name().toLowerCase(), histogram, errors.get(operation).sum());
+        }
+        long totalErrors = errors.values().stream().mapToLong(LongAdder::sum).sum();
+        print("all", all, totalErrors);
+
+        double duration = Double.parseDouble(options.get("duration"));
+        System.out.printf("sent %d requests in %.0f s, %.1f requests/s%n", sent, duration, sent / duration);
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("options", options);
+        report.put("javaVersion", System.getProperty("java.version"));
+        report.put("requests", sent);
+        report.put("requestsPerSecond", sent / duration);
+        report.put("latencyUnit", "microseconds");
+        report.put("all", summary(all, totalErrors));
+        report.put("operations", operationReports);
+        File reportFile = new File(options.get("report"));
+        if (reportFile.getParentFile() != null) {
+            reportFile.getParentFile().mkdirs();
+        }
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(reportFile, report);
+        System.out.println("report written to " + reportFile.getAbsolutePath());
+    }
+
+    private static Map<String, Object> summary(Histogram histogram, long errorCount) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", histogram.getTotalCount());
+        summary.put("errors", errorCount);
+        summary.put("mean", histogram.getMean());
+        summary.put("p50", histogram.getValueAtPercentile(50.0));
+        summary.put("p90", histogram.getValueAtPercentile(90.0));
+        summary.put("p99", histogram.getValueAtPercentile(99.0));
+        summary.put("p99.9", histogram.getValueAtPercentile(99.9));
+        summary.put("max", histogram.getMaxValue());
+        return summary;
+    }
+
+    private static void print(String name, Histogram histogram, long errorCount) {
+        System.out.printf("%-10s %10d %8d %12d %12d %12d %12d%n", name, histogram.getTotalCount(), errorCount,
+                histogram.getValueAtPercentile(50.0), histogram.getValueAtPercentile(99.0),
+                histogram.getValueAtPercentile(99.9), histogram.getMaxValue());
+    }
+}
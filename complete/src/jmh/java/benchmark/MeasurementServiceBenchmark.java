@@ -0,0 +1,160 @@
+package benchmark;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import hello.Application;
+import model.Measurements;
+import model.Metrics;
+import model.StatsRequest;
+import model.StatsResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import service.MeasurementService;
+
+/**
+ * MeasurementService operations against a store preloaded with rows synthetic readings, one per minute from
+ * 2000-01-01, wired by Spring the way the application runs but without the web layer and with the stats cache
+ * disabled so every stats call aggregates. Readings are loaded in batches through addMeasurements.
+ *
+ * The default sizes fit a small heap. Larger datasets are selected with -p rows=10000000,100000000 and need
+ * -jvmArgs -Xmx..., about 2 GB for 100M rows with the columnar store; the skiplist store needs several times that.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class MeasurementServiceBenchmark {
+
+    private static final long FIRST_TIMESTAMP = Instant.parse("2000-01-01T00:00:00Z").toEpochMilli();
+    private static final long INTERVAL_MILLIS = 60_000L;
+    private static final long DAY_MILLIS = 86_400_000L;
+    private static final int LOAD_BATCH_SIZE = 10_000;
+    private static final float UNCHANGED = Float.MIN_VALUE; // the controller's marker for a field absent from a patch
+
+    private static final StatsRequest[] STATS_REQUESTS = {
+            statsRequest(Arrays.asList("temperature"), Arrays.asList("min", "max", "average")),
+            statsRequest(Arrays.asList("temperature", "dewPoint"), Arrays.asList("average", "stddev")),
+            statsRequest(Arrays.asList("temperature", "dewPoint", "precipitation"), Arrays.asList("min", "max", "count", "sum")),
+            statsRequest(Arrays.asList("dewPoint", "precipitation"), Arrays.asList("p50", "p99")),
+    };
+
+    @Param({"10000", "1000000"})
+    private int rows;
+
+    @Param({"skiplist", "columnar"})
+    private String store;
+
+    private ConfigurableApplicationContext context;
+    private MeasurementService measurementService;
+    private WeatherGenerator weatherGenerator;
+    private long lastTimestamp;
+    private int days;
+    private final AtomicLong nextTimestamp = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(Application.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "measurement.store=" + store,
+                        "measurement.persistence.enabled=false",
+                        "measurement.stats-cache.max-entries=0",
+                        "spring.main.banner-mode=off",
+                        "logging.level.root=WARN")
+                .run();
+        measurementService = context.getBean(MeasurementService.class);
+
+        weatherGenerator = new WeatherGenerator(42L);
+        long[] timestamps = new long[LOAD_BATCH_SIZE];
+        Metrics[] metrics = new Metrics[LOAD_BATCH_SIZE];
+        for (int loaded = 0; loaded < rows; loaded += LOAD_BATCH_SIZE) {
+            int count = Math.min(LOAD_BATCH_SIZE, rows - loaded);
+            weatherGenerator.fill(timestamps, metrics, count, FIRST_TIMESTAMP + loaded * INTERVAL_MILLIS, INTERVAL_MILLIS);
+            measurementService.addMeasurements(
+                    count == LOAD_BATCH_SIZE ? timestamps : Arrays.copyOf(timestamps, count),
+                    count == LOAD_BATCH_SIZE ? metrics : Arrays.copyOf(metrics, count));
+        }
+        lastTimestamp = FIRST_TIMESTAMP + (rows - 1) * INTERVAL_MILLIS;
+        days = (int) Math.max(1, (lastTimestamp - FIRST_TIMESTAMP) / DAY_MILLIS);
+        nextTimestamp.set(lastTimestamp + INTERVAL_MILLIS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void addMeasurement() {
+        long timestamp = nextTimestamp.getAndAdd(INTERVAL_MILLIS);
+        Metrics metrics;
+        synchronized (weatherGenerator) {
+            metrics = weatherGenerator.next(timestamp);
+        }
+        measurementService.addMeasurement(timestamp, metrics);
+    }
+
+    @Benchmark
+    public Measurements getMeasurementByTimestamp() {
+        return measurementService.getMeasurement(randomLoadedTimestamp());
+    }
+
+    @Benchmark
+    public ArrayList<Measurements> getMeasurementsByDate() {
+        long timestamp = FIRST_TIMESTAMP + ThreadLocalRandom.current().nextInt(days) * DAY_MILLIS;
+        return measurementService.getMeasurements(Instant.ofEpochMilli(timestamp).atOffset(ZoneOffset.UTC).toLocalDate());
+    }
+
+    @Benchmark
+    public int patchMeasurement() {
+        float temperature = 10f + ThreadLocalRandom.current().nextInt(200) / 10f;
+        return measurementService.patchMeasurement(randomLoadedTimestamp(),
+                new Metrics(temperature, UNCHANGED, UNCHANGED), null);
+    }
+
+    /**
+     * Mixed metrics and stats over a random range of one day up to a month of the loaded data
+     */
+    @Benchmark
+    public ArrayList<StatsResponse> getMeasurementStatistics() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        StatsRequest template = STATS_REQUESTS[random.nextInt(STATS_REQUESTS.length)];
+        int length = 1 + random.nextInt(Math.min(30, days));
+        int firstDay = random.nextInt(Math.max(1, days - length + 1));
+        LocalDate from = LocalDate.of(2000, 1, 1).plusDays(firstDay);
+        return measurementService.getMeasurementStatistics(new StatsRequest(template.getMetric(), template.getStats(),
+                from.atStartOfDay(), from.plusDays(length).atStartOfDay()));
+    }
+
+    private long randomLoadedTimestamp() {
+        return FIRST_TIMESTAMP + ThreadLocalRandom.current().nextInt(rows) * INTERVAL_MILLIS;
+    }
+
+    private static StatsRequest statsRequest(List<String> metrics, List<String> stats) {
+        return new StatsRequest(new ArrayList<>(metrics), new ArrayList<>(stats));
+    }
+}
@@ -0,0 +1,57 @@
+package benchmark;
+
+import java.util.SplittableRandom;
+
+import model.Metrics;
+
+/**
+ * Deterministic synthetic weather readings for benchmarks: a seasonal and a daily temperature cycle with noise,
+ * a dew point a few degrees below the temperature and precipitation in rare showers. Like real feeds a share of
+ * the readings is missing (0.0), so stores and aggregations see the same gaps they see in production.
+ */
+public final class WeatherGenerator {
+
+    private static final double DAY_MILLIS = 86_400_000.0;
+    private static final double YEAR_MILLIS = 365.25 * DAY_MILLIS;
+
+    private final SplittableRandom random;
+    private boolean raining;
+
+    public WeatherGenerator(long seed) {
+        this.random = new SplittableRandom(seed);
+    }
+
+    public Metrics next(long timestamp) {
+        double season = Math.sin(2 * Math.PI * (timestamp % (long) YEAR_MILLIS) / YEAR_MILLIS);
+        double day = Math.sin(2 * Math.PI * ((timestamp % (long) DAY_MILLIS) / DAY_MILLIS - 0.375));
+        float temperature = (float) (12.0 + 10.0 * season + 5.0 * day + random.nextDouble() * 2.0 - 1.0);
+        float dewPoint = (float) (temperature - 2.0 - random.nextDouble() * 8.0);
+        if (raining ? random.nextInt(20) == 0 : random.nextInt(200) == 0) {
+            raining = !raining;
+        }
+        float precipitation = raining ? (float) (0.1 + random.nextDouble() * 4.0) : 0.0f;
+        return new Metrics(
+                missing() ? 0.0f : nonZero(temperature),
+                missing() ? 0.0f : nonZero(dewPoint),
+                precipitation);
+    }
+
+    /**
+     * Fills the arrays with count readings starting at the given timestamp, one every intervalMillis
+     */
+    public void fill(long[] timestamps, Metrics[] metrics, int count, long firstTimestamp, long intervalMillis) {
+        for (int i = 0; i < count; i++) {
+            timestamps[i] = firstTimestamp + i * intervalMillis;
+            metrics[i] = next(timestamps[i]);
+        }
+    }
+
+    private boolean missing() {
+        return random.nextInt(100) == 0;
+    }
+
+    private static float nonZero(float value) {
+        // 0.0 is the missing marker, a real reading of exactly zero is nudged off it
+        return value == 0.0f ? 0.01f : value;
+    }
+}
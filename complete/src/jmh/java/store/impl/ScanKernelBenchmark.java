@@ -0,0 +1,75 @@
+package store.impl;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import model.MetricAccumulator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Min / max / sum / count over one metric column: the per entry loop the columnar store used before against
+ * ScanKernels, with a bitmap and with 0.0 as the missing marker, for a share of missing readings.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScanKernelBenchmark {
+
+    @Param({"4096", "65536"})
+    private int size;
+
+    @Param({"0", "10"})
+    private int missingPercent;
+
+    private float[] values;
+    private long[] validity;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(7);
+        values = new float[size];
+        validity = new long[(size + 63) / 64];
+        for (int i = 0; i < size; i++) {
+            if (random.nextInt(100) >= missingPercent) {
+                values[i] = random.nextFloat() * 60 - 20;
+                validity[i >>> 6] |= 1L << i;
+            }
+        }
+    }
+
+    @Benchmark
+    public MetricAccumulator perEntry() {
+        MetricAccumulator accumulator = new MetricAccumulator();
+        for (int i = 0; i < size; i++) {
+            accumulator.accept((validity[i >>> 6] & (1L << i)) != 0 ? values[i] : 0.0f);
+        }
+        return accumulator;
+    }
+
+    @Benchmark
+    public MetricAccumulator kernelWithBitmap() {
+        MetricAccumulator accumulator = new MetricAccumulator();
+        ScanKernels.accumulate(values, validity, 0, size, accumulator);
+        return accumulator;
+    }
+
+    @Benchmark
+    public MetricAccumulator kernelWithZeros() {
+        MetricAccumulator accumulator = new MetricAccumulator();
+        ScanKernels.accumulateNonZero(values, 0, size, accumulator);
+        return accumulator;
+    }
+}
@@ -5,7 +5,7 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.ComponentScan;
 
 @SpringBootApplication
-@ComponentScan(basePackages = {"hello", "service.impl"})
+@ComponentScan(basePackages = {"hello", "service.impl", "store.impl"})
 public class Application {
 
     public static void main(String[] args) {
@@ -1,61 +1,86 @@
 package hello;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import model.BatchItemResult;
+import model.IngestSummary;
 import model.Measurements;
 import model.Metrics;
+import model.Series;
 import model.StatsRequest;
 import model.StatsResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import service.MeasurementService;
+import service.impl.MeasurementMeters;
+import store.MeasurementBatch;
+import util.MeasurementETag;
+import util.MeasurementStreamReader;
+import util.MeasurementStreamWriter;
 import util.WeatherTrackerUtil;
 
-import javax.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequest;
 
 @RestController
 public class MeasurementController {
 
+    private static final Logger log = LoggerFactory.getLogger(MeasurementController.class);
+
     private static final ResponseEntity NOT_IMPLEMENTED = new ResponseEntity(HttpStatus.NOT_IMPLEMENTED);
 
+    private static final List<String> LIVE_METRICS = Arrays.asList("temperature", "dewPoint", "precipitation");
+    private static final List<String> LIVE_STATS = Arrays.asList("min", "max", "average");
+
+    private static final long MAX_SERIES_BUCKETS = 100_000; // buckets of one /stats/series request
+
+    private static final int STREAM_BATCH_SIZE = 4096; // rows buffered per store write while streaming a body
+
     @Autowired
     private MeasurementService measurementService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeasurementMeters measurementMeters; // Parse and serialization time of stats requests
+
+    @Value("${measurement.logging.sample-rate:0.01}")
+    private double logSampleRate; // Share of high volume requests which log a DEBUG summary
+
     //Create Measurement
     @RequestMapping(method = RequestMethod.POST, value = "/measurements", consumes = "application/json")
     public ResponseEntity createMeasurement(@RequestBody JsonNode measurement,
                                             HttpServletRequest httpServletRequest) {
 
         try {
-            LocalDateTime timeStamp = WeatherTrackerUtil.convertStringToLocalDate(measurement.get("timestamp").asText());
+            long epochMillis = WeatherTrackerUtil.convertStringToEpochMillis(measurement.get("timestamp").asText());
 
-            boolean isValidRequest = true;
-            if(measurement.get("temperature") != null) {
-                isValidRequest = isValidRequest && isFloatCheck(measurement.get("temperature").asText());
-            }
-            if(measurement.get("dewPoint") != null) {
-                isValidRequest = isValidRequest && isFloatCheck(measurement.get("dewPoint").asText());
-            }
-            if(measurement.get("precipitation") != null) {
-                isValidRequest = isValidRequest && isFloatCheck(measurement.get("precipitation").asText());
-            }
-
-            if(!isValidRequest) {
+            if(!isValidMetrics(measurement)) {
                 return new ResponseEntity(HttpStatus.NOT_FOUND);
             }
 
-            Metrics metric = new Metrics(
-                    convertNullToFloatAdd(measurement.get("temperature")),
-                    convertNullToFloatAdd(measurement.get("dewPoint")),
-                    convertNullToFloatAdd(measurement.get("precipitation"))
-            );
+            Metrics metric = toMetricsForAdd(measurement);
 
-            measurementService.addMeasurement(measurement.get("timestamp").asText(), metric);
+            measurementService.addMeasurement(epochMillis, metric);
 
         }
         catch (Exception e) {
@@ -64,13 +89,88 @@ public class MeasurementController {
         return new ResponseEntity(HttpStatus.CREATED);
     }
 
+    //Create Measurements in bulk from a JSON array
+    @RequestMapping(method = RequestMethod.POST, value = "/measurements/batch", consumes = "application/json")
+    public ResponseEntity createMeasurements(@RequestBody JsonNode measurements) {
+        if(!measurements.isArray()) {
+            return new ResponseEntity(HttpStatus.BAD_REQUEST);
+        }
+        JsonNode[] batch = new JsonNode[measurements.size()];
+        for(int i = 0; i < batch.length; i++) {
+            batch[i] = measurements.get(i);
+        }
+        return new ResponseEntity<>(createMeasurements(batch), HttpStatus.OK);
+    }
+
+    //Create Measurements in bulk from newline delimited JSON, one measurement per line
+    @RequestMapping(method = RequestMethod.POST, value = "/measurements/batch", consumes = "application/x-ndjson")
+    public ResponseEntity createMeasurementsFromNdjson(@RequestBody String measurements) {
+        ArrayList<JsonNode> batch = new ArrayList<>();
+        for(String line : measurements.split("\r?\n")) {
+            if(line.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                batch.add(objectMapper.readTree(line));
+            } catch (IOException e) {
+                batch.add(null); // reported as a bad request for this line only
+            }
+        }
+        return new ResponseEntity<>(createMeasurements(batch.toArray(new JsonNode[0])), HttpStatus.OK);
+    }
+
+    //Streaming ingest of newline delimited JSON, the body is parsed row by row from the request stream
+    @RequestMapping(method = RequestMethod.POST, value = "/measurements/stream", consumes = "application/x-ndjson")
+    public ResponseEntity streamMeasurementsFromNdjson(HttpServletRequest httpServletRequest) throws IOException {
+        MeasurementBatch batch = new MeasurementBatch(STREAM_BATCH_SIZE);
+        IngestSummary summary = new IngestSummary();
+        try {
+            MeasurementStreamReader.readNdjson(objectMapper.getFactory(), httpServletRequest.getInputStream(),
+                    batch, measurementService::addMeasurements, summary);
+        } catch (JsonProcessingException e) {
+            return new ResponseEntity<>(summary, HttpStatus.BAD_REQUEST);
+        }
+        return new ResponseEntity<>(summary, HttpStatus.OK);
+    }
+
+    //Streaming ingest of CSV with a header line, the body is parsed row by row from the request stream
+    @RequestMapping(method = RequestMethod.POST, value = "/measurements/stream", consumes = "text/csv")
+    public ResponseEntity streamMeasurementsFromCsv(HttpServletRequest httpServletRequest) throws IOException {
+        MeasurementBatch batch = new MeasurementBatch(STREAM_BATCH_SIZE);
+        IngestSummary summary = new IngestSummary();
+        try {
+            MeasurementStreamReader.readCsv(httpServletRequest.getInputStream(),
+                    batch, measurementService::addMeasurements, summary);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(summary, HttpStatus.BAD_REQUEST);
+        }
+        return new ResponseEntity<>(summary, HttpStatus.OK);
+    }
+
     // features/01-measurements/02-get-measurement.feature
     //GET by timestamp
     @RequestMapping(value = "/measurements/{timestamp}", method = RequestMethod.GET)
     public ResponseEntity getMeasurement(@PathVariable("timestamp") String timestamp) {
 
-        ArrayList<Measurements> measurementList = measurementService.getMeasurement(timestamp);
-        System.out.println("Here is the list" + measurementList);
+        boolean sampled = isSampled();
+        long start = sampled ? System.nanoTime() : 0L;
+        ArrayList<Measurements> measurementList = new ArrayList<>();
+        try {
+            if(timestamp.length() > 10) {
+                Measurements measurements = measurementService.getMeasurement(WeatherTrackerUtil.convertStringToEpochMillis(timestamp));
+                if(measurements != null) {
+                    measurementList.add(measurements);
+                }
+            } else {
+                measurementList = measurementService.getMeasurements(LocalDate.parse(timestamp));
+            }
+        } catch (DateTimeParseException e) {
+            // an unparseable timestamp or date cannot match anything
+        }
+        if (sampled) {
+            log.debug("request=get_measurements timestamp={} rows={} elapsed_us={}",
+                    timestamp, measurementList.size(), (System.nanoTime() - start) / 1000);
+        }
 
         /* Example 1:
         timestamp := "2015-09-01T16:20:00.000Z"
@@ -101,7 +201,13 @@ public class MeasurementController {
         */
 
         ResponseEntity resp = null;
-        if(measurementList.size() != 0) {
+        if(measurementList.size() == 1 && timestamp.length() > 10) {
+            // a single measurement carries an entity tag for conditional PUT and PATCH
+            Measurements measurements = measurementList.get(0);
+            resp = ResponseEntity.ok()
+                    .eTag(MeasurementETag.of(measurements.getTemperature(), measurements.getDewPoint(), measurements.getPrecipitation()))
+                    .body(measurementList);
+        } else if(measurementList.size() != 0) {
             resp = new ResponseEntity<Iterable<Measurements>>(measurementList, HttpStatus.OK);
         } else {
             resp = new ResponseEntity(HttpStatus.NOT_FOUND);
@@ -109,11 +215,44 @@ public class MeasurementController {
         return resp;
     }
 
+    //Range export, rows are streamed from the store to the response as NDJSON or, for Accept: text/csv, as CSV
+    @RequestMapping(value = "/measurements", method = RequestMethod.GET, params = {"from", "to"},
+            produces = {"application/x-ndjson", "text/csv"})
+    public ResponseEntity<StreamingResponseBody> exportMeasurements(@RequestParam("from") String from,
+                                                                    @RequestParam("to") String to,
+                                                                    @RequestHeader(value = "Accept", required = false) String accept) {
+        long fromEpochMillis;
+        long toEpochMillis;
+        try {
+            fromEpochMillis = WeatherTrackerUtil.convertStringToEpochMillis(from);
+            toEpochMillis = WeatherTrackerUtil.convertStringToEpochMillis(to);
+        } catch (DateTimeParseException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+
+        boolean csv = accept != null && accept.contains("text/csv") && !accept.contains("application/x-ndjson");
+        StreamingResponseBody body = outputStream -> {
+            MeasurementStreamWriter writer = csv
+                    ? MeasurementStreamWriter.csv(outputStream)
+                    : MeasurementStreamWriter.ndjson(objectMapper.getFactory(), outputStream);
+            try {
+                measurementService.exportMeasurements(fromEpochMillis, toEpochMillis, writer);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            writer.finish();
+        };
+        return ResponseEntity.ok()
+                .contentType(csv ? MediaType.valueOf("text/csv") : MediaType.valueOf("application/x-ndjson"))
+                .body(body);
+    }
+
     // features/01-measurements/03-update-measurement.feature
     //@PUT @Path("/measurements/{timestamp}")
     //REPLACE by time stamp
     @RequestMapping(value = "/measurements/{timestamp}", method = RequestMethod.PUT)
-    public ResponseEntity replaceMeasurement(@PathVariable("timestamp") String timestamp, @RequestBody JsonNode measurement) {
+    public ResponseEntity replaceMeasurement(@PathVariable("timestamp") String timestamp, @RequestBody JsonNode measurement,
+                                             @RequestHeader(value = "If-Match", required = false) String ifMatch) {
         /* Example:
         timestamp := "2015-09-01T16:20:00.000Z"
         measurement := {
@@ -128,16 +267,18 @@ public class MeasurementController {
         ResponseEntity resp = null;
 
 
+        long epochMillis = parseKey(timestamp);
         if(isRequestValid(measurement)) {
-            String newtimestamp = measurement.get("timestamp").asText();
-            if(newtimestamp.equals(timestamp)) {
+            if(epochMillis == Long.MIN_VALUE) {
+                httpStatusCode = 404; // an unparseable timestamp can never have been stored
+            } else if(parseKey(measurement.get("timestamp").asText()) == epochMillis) {
                 Metrics metric = new Metrics(
                         measurement.get("temperature").floatValue(),
                         measurement.get("dewPoint").floatValue(),
                         measurement.get("precipitation").floatValue()
                 );
 
-                httpStatusCode = measurementService.updateMeasurement(timestamp, metric);
+                httpStatusCode = measurementService.updateMeasurement(epochMillis, metric, ifMatch);
             } else {
                 httpStatusCode = 409;
             }
@@ -153,7 +294,8 @@ public class MeasurementController {
 
     //Update API
     @RequestMapping(value = "/measurements/{timestamp}", method = RequestMethod.PATCH)
-    public ResponseEntity updateMeasurement(@PathVariable("timestamp") String timestamp, @RequestBody JsonNode measurement) {
+    public ResponseEntity updateMeasurement(@PathVariable("timestamp") String timestamp, @RequestBody JsonNode measurement,
+                                            @RequestHeader(value = "If-Match", required = false) String ifMatch) {
         /* Example:
         timestamp := "2015-09-01T16:20:00.000Z"
         measurement := {
@@ -163,27 +305,18 @@ public class MeasurementController {
         */
 
         int httpStatusCode;
-        boolean isValidRequest = true;
-        if(measurement.get("temperature") != null) {
-            isValidRequest = isValidRequest && isFloatCheck(measurement.get("temperature").asText());
-        }
-        if(measurement.get("dewPoint") != null) {
-            isValidRequest = isValidRequest && isFloatCheck(measurement.get("dewPoint").asText());
-        }
-        if(measurement.get("precipitation") != null) {
-            isValidRequest = isValidRequest && isFloatCheck(measurement.get("precipitation").asText());
-        }
-
-        if(isValidRequest) {
-            String newtimestamp = measurement.get("timestamp").asText();
-            if(newtimestamp.equals(timestamp)) {
+        long epochMillis = parseKey(timestamp);
+        if(isValidMetrics(measurement)) {
+            if(epochMillis == Long.MIN_VALUE) {
+                httpStatusCode = 404;
+            } else if(parseKey(measurement.get("timestamp").asText()) == epochMillis) {
                 Metrics metric = new Metrics(
                         convertNullToFloat(measurement.get("temperature")),
                         convertNullToFloat(measurement.get("dewPoint")),
                         convertNullToFloat(measurement.get("precipitation"))
                 );
 
-                httpStatusCode = measurementService.patchMeasurement(timestamp, metric);
+                httpStatusCode = measurementService.patchMeasurement(epochMillis, metric, ifMatch);
             } else {
                 httpStatusCode = 409;
             }
@@ -203,7 +336,8 @@ public class MeasurementController {
         /* Example:
         timestamp := "2015-09-01T16:20:00.000Z"
         */
-        Metrics result = measurementService.deleteMeasurement(timestamp);
+        long epochMillis = parseKey(timestamp);
+        Metrics result = epochMillis == Long.MIN_VALUE ? null : measurementService.deleteMeasurement(epochMillis);
         int httpStatusCode = 0;
         if(result != null) {
             httpStatusCode = 204;
@@ -223,7 +357,7 @@ public class MeasurementController {
                                    @RequestParam("stat") List<String> stats,
                                    @RequestParam("fromDateTime") String fromDateTime,
                                    @RequestParam("toDateTime") String toDateTime
-    ) {
+    ) throws JsonProcessingException {
         /* Example:
         metrics := [
             "temperature",
@@ -257,15 +391,152 @@ public class MeasurementController {
         ]
         */
 
-        System.out.println("To Date Time " + toDateTime);
+        long parseStart = System.nanoTime();
         LocalDateTime fromDateLt = WeatherTrackerUtil.convertStringToLocalDate(fromDateTime);
         LocalDateTime toDateLt = WeatherTrackerUtil.convertStringToLocalDate(toDateTime);
         StatsRequest request = new StatsRequest(new ArrayList<>(metrics), new ArrayList<>(stats), fromDateLt, toDateLt);
+        measurementMeters.parsed(parseStart);
         ArrayList<StatsResponse> response = measurementService.getMeasurementStatistics(request);
 
+        // serialized here rather than by the message converter so the time it takes can be measured
+        long serializationStart = System.nanoTime();
+        byte[] body = objectMapper.writeValueAsBytes(response);
+        measurementMeters.serialized(serializationStart);
+        if (isSampled()) {
+            log.debug("request=get_stats from={} to={} metrics={} stats={} results={} bytes={} elapsed_us={}",
+                    fromDateTime, toDateTime, metrics.size(), stats.size(), response.size(), body.length,
+                    (System.nanoTime() - parseStart) / 1000);
+        }
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    //@GET @Path("/stats/series")
+    @RequestMapping(value = "/stats/series", method = RequestMethod.GET)
+    public ResponseEntity getStatsSeries(@RequestParam("metric") List<String> metrics,
+                                         @RequestParam(value = "stat", required = false) List<String> stats,
+                                         @RequestParam(value = "interval", required = false) String interval,
+                                         @RequestParam("from") String from,
+                                         @RequestParam("to") String to,
+                                         @RequestParam(value = "points", defaultValue = "0") int points) {
+        // interval is an ISO-8601 duration such as PT1H, without it the stored values are returned
+        // and have to be downsampled to at most points values per metric
+        long fromEpochMillis;
+        long toEpochMillis;
+        Duration length = null;
+        try {
+            fromEpochMillis = WeatherTrackerUtil.convertStringToEpochMillis(from);
+            toEpochMillis = WeatherTrackerUtil.convertStringToEpochMillis(to);
+            if (interval != null) {
+                length = Duration.parse(interval);
+            }
+        } catch (DateTimeParseException e) {
+            return new ResponseEntity(HttpStatus.BAD_REQUEST);
+        }
+        if (points < 0 || fromEpochMillis > toEpochMillis) {
+            return new ResponseEntity(HttpStatus.BAD_REQUEST);
+        }
+        if (length == null) {
+            if (points == 0) {
+                return new ResponseEntity(HttpStatus.BAD_REQUEST);
+            }
+        } else if (stats == null || length.toMillis() <= 0
+                || (toEpochMillis - fromEpochMillis) / length.toMillis() > MAX_SERIES_BUCKETS) {
+            return new ResponseEntity(HttpStatus.BAD_REQUEST);
+        }
+        ArrayList<Series> response = measurementService.getSeries(metrics, stats, fromEpochMillis, toEpochMillis, length, points);
+        return new ResponseEntity(response, HttpStatus.OK);
+    }
+
+    //@GET @Path("/stats/live")
+    @RequestMapping(value = "/stats/live", method = RequestMethod.GET)
+    public ResponseEntity getLiveStats(@RequestParam("window") String window,
+                                       @RequestParam(value = "metric", required = false) List<String> metrics,
+                                       @RequestParam(value = "stat", required = false) List<String> stats) {
+        // window is an ISO-8601 duration such as PT5M and must be one of measurement.live.windows
+        Duration length;
+        try {
+            length = Duration.parse(window);
+        } catch (DateTimeParseException e) {
+            return new ResponseEntity(HttpStatus.BAD_REQUEST);
+        }
+        if (metrics == null) {
+            metrics = LIVE_METRICS;
+        }
+        if (stats == null) {
+            stats = LIVE_STATS;
+        }
+        ArrayList<StatsResponse> response = measurementService.getLiveStatistics(length, metrics, stats);
+        if (response == null) {
+            return new ResponseEntity(HttpStatus.BAD_REQUEST);
+        }
         return new ResponseEntity(response, HttpStatus.OK);
     }
 
+    //@GET @Path("/stats/cache")
+    @RequestMapping(value = "/stats/cache", method = RequestMethod.GET)
+    public ResponseEntity getStatsCache() {
+        return new ResponseEntity(measurementService.getStatsCacheCounters(), HttpStatus.OK);
+    }
+
+
+    /**
+     * Validates a whole batch in one pass and stores every valid measurement with a single service call,
+     * each item gets the status the single item endpoint would have returned for it
+     */
+    private List<BatchItemResult> createMeasurements(JsonNode[] batch) {
+        BatchItemResult[] results = new BatchItemResult[batch.length];
+        long[] timestamps = new long[batch.length];
+        Metrics[] metrics = new Metrics[batch.length];
+        int validCount = 0;
+        for(int i = 0; i < batch.length; i++) {
+            JsonNode measurement = batch[i];
+            JsonNode timestampNode = measurement == null ? null : measurement.get("timestamp");
+            String timestamp = timestampNode == null ? null : timestampNode.asText();
+            int status;
+            if(timestamp == null) {
+                status = 400;
+            } else {
+                try {
+                    long epochMillis = WeatherTrackerUtil.convertStringToEpochMillis(timestamp);
+                    if(isValidMetrics(measurement)) {
+                        timestamps[validCount] = epochMillis;
+                        metrics[validCount] = toMetricsForAdd(measurement);
+                        validCount++;
+                        status = 201;
+                    } else {
+                        status = 404;
+                    }
+                } catch (DateTimeParseException e) {
+                    status = 400;
+                }
+            }
+            results[i] = new BatchItemResult(i, timestamp, status);
+        }
+
+        if(validCount > 0) {
+            measurementService.addMeasurements(Arrays.copyOf(timestamps, validCount), Arrays.copyOf(metrics, validCount));
+        }
+        return Arrays.asList(results);
+    }
+
+    private boolean isValidMetrics(JsonNode measurement) {
+        return isFloatOrAbsent(measurement.get("temperature")) &&
+                isFloatOrAbsent(measurement.get("dewPoint")) &&
+                isFloatOrAbsent(measurement.get("precipitation"));
+    }
+
+    private boolean isFloatOrAbsent(JsonNode value) {
+        // numeric nodes are accepted without the exception driven string parse
+        return value == null || value.isNumber() || isFloatCheck(value.asText());
+    }
+
+    private Metrics toMetricsForAdd(JsonNode measurement) {
+        return new Metrics(
+                convertNullToFloatAdd(measurement.get("temperature")),
+                convertNullToFloatAdd(measurement.get("dewPoint")),
+                convertNullToFloatAdd(measurement.get("precipitation"))
+        );
+    }
 
     private boolean isFloatCheck(String str) {
         try {
@@ -299,6 +570,24 @@ public class MeasurementController {
                 isFloatCheck(measurement.get("precipitation").asText());
     }
 
+    /**
+     * Canonical key of a timestamp, epoch milliseconds with any offset applied, or Long.MIN_VALUE if it does not parse
+     */
+    private long parseKey(String timestamp) {
+        try {
+            return WeatherTrackerUtil.convertStringToEpochMillis(timestamp);
+        } catch (DateTimeParseException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Whether this request logs a DEBUG summary, free when DEBUG is off for the controller
+     */
+    private boolean isSampled() {
+        return log.isDebugEnabled() && ThreadLocalRandom.current().nextDouble() < logSampleRate;
+    }
+
     private HttpStatus getHttpStatus(int httpStatusCode) {
         HttpStatus httpStatus = null;
         if (httpStatusCode == 204) {
@@ -309,6 +598,8 @@ public class MeasurementController {
             httpStatus = HttpStatus.CONFLICT;
         } else if (httpStatusCode == 400) {
             httpStatus = HttpStatus.BAD_REQUEST;
+        } else if (httpStatusCode == 412) {
+            httpStatus = HttpStatus.PRECONDITION_FAILED;
         }
         return httpStatus;
     }
@@ -0,0 +1,44 @@
+package model;
+
+/**
+ * Outcome of one measurement of a bulk ingestion request, status uses the same codes as the single item endpoint
+ */
+public class BatchItemResult {
+
+    private int index;
+    private String timestamp;
+    private int status;
+
+    public BatchItemResult(int index, String timestamp, int status) {
+        this.index = index;
+        this.timestamp = timestamp;
+        this.status = status;
+    }
+
+    public BatchItemResult() {
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public String getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(String timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+}
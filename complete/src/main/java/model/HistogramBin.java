@@ -0,0 +1,44 @@
+package model;
+
+/**
+ * One bin of a histogram stat, counts the values between lower and upper
+ */
+public class HistogramBin {
+
+    private float lower;
+    private float upper;
+    private long count;
+
+    public HistogramBin(float lower, float upper, long count) {
+        this.lower = lower;
+        this.upper = upper;
+        this.count = count;
+    }
+
+    public HistogramBin() {
+    }
+
+    public float getLower() {
+        return lower;
+    }
+
+    public void setLower(float lower) {
+        this.lower = lower;
+    }
+
+    public float getUpper() {
+        return upper;
+    }
+
+    public void setUpper(float upper) {
+        this.upper = upper;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+}
@@ -0,0 +1,37 @@
+package model;
+
+/**
+ * Result of a streaming ingest request, streamed bodies can hold millions of rows so only counts are reported
+ */
+public class IngestSummary {
+
+    private long accepted;
+    private long rejected;
+
+    public IngestSummary() {
+    }
+
+    public long getAccepted() {
+        return accepted;
+    }
+
+    public void setAccepted(long accepted) {
+        this.accepted = accepted;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public void setRejected(long rejected) {
+        this.rejected = rejected;
+    }
+
+    public void incrementAccepted() {
+        accepted++;
+    }
+
+    public void incrementRejected() {
+        rejected++;
+    }
+}
@@ -0,0 +1,199 @@
+package model;
+
+import java.util.List;
+
+/**
+ * Primitive running min / max / sum / count of one metric.
+ * A value of 0.0 is what the API stores for a missing reading, so it is not accumulated.
+ * Sums and sums of squares are compensated (Neumaier) doubles, so long ranges and values that are
+ * taken back out do not drift. An accumulator created with a sketch also keeps a QuantileSketch
+ * for percentiles and histograms; merging only carries sketches from accumulators which have one.
+ */
+public class MetricAccumulator {
+
+    private long count;
+    private double sum;
+    private double sumCompensation;
+    private double sumOfSquares;
+    private double sumOfSquaresCompensation;
+    private float min = Float.POSITIVE_INFINITY;
+    private float max = Float.NEGATIVE_INFINITY;
+    private final QuantileSketch sketch;
+
+    public MetricAccumulator() {
+        this(false);
+    }
+
+    public MetricAccumulator(boolean withSketch) {
+        this.sketch = withSketch ? new QuantileSketch() : null;
+    }
+
+    public void accept(float value) {
+        if (value == 0.0f) {
+            return;
+        }
+        count++;
+        addToSum(value);
+        addToSumOfSquares((double) value * value);
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+        if (sketch != null) {
+            sketch.add(value);
+        }
+    }
+
+    /**
+     * Takes a previously accepted value back out, returns false if min or max can no longer be
+     * derived from the running state and the accumulator has to be rebuilt from the raw values
+     */
+    public boolean remove(float value) {
+        if (value == 0.0f) {
+            return true;
+        }
+        count--;
+        if (count == 0) {
+            reset();
+            return true;
+        }
+        addToSum(-value);
+        addToSumOfSquares(-(double) value * value);
+        if (sketch != null) {
+            sketch.remove(value);
+        }
+        return value > min && value < max;
+    }
+
+    public void merge(MetricAccumulator other) {
+        if (other.count == 0) {
+            return;
+        }
+        count += other.count;
+        addToSum(other.sum);
+        addToSum(other.sumCompensation);
+        addToSumOfSquares(other.sumOfSquares);
+        addToSumOfSquares(other.sumOfSquaresCompensation);
+        if (other.min < min) {
+            min = other.min;
+        }
+        if (other.max > max) {
+            max = other.max;
+        }
+        if (sketch != null && other.sketch != null) {
+            sketch.merge(other.sketch);
+        }
+    }
+
+    /**
+     * Merges a summary taken from another accumulator, for example one that was written to a file
+     */
+    public void merge(long otherCount, double otherSum, double otherSumOfSquares, float otherMin, float otherMax) {
+        if (otherCount == 0) {
+            return;
+        }
+        count += otherCount;
+        addToSum(otherSum);
+        addToSumOfSquares(otherSumOfSquares);
+        if (otherMin < min) {
+            min = otherMin;
+        }
+        if (otherMax > max) {
+            max = otherMax;
+        }
+    }
+
+    public void reset() {
+        count = 0;
+        sum = 0.0;
+        sumCompensation = 0.0;
+        sumOfSquares = 0.0;
+        sumOfSquaresCompensation = 0.0;
+        min = Float.POSITIVE_INFINITY;
+        max = Float.NEGATIVE_INFINITY;
+        if (sketch != null) {
+            sketch.clear();
+        }
+    }
+
+    public boolean hasSketch() {
+        return sketch != null;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getSum() {
+        return sum + sumCompensation;
+    }
+
+    public double getSumOfSquares() {
+        return sumOfSquares + sumOfSquaresCompensation;
+    }
+
+    public float getMin() {
+        return count == 0 ? 0.0f : min;
+    }
+
+    public float getMax() {
+        return count == 0 ? 0.0f : max;
+    }
+
+    public double getAverage() {
+        return count == 0 ? 0.0 : getSum() / count;
+    }
+
+    /**
+     * Population standard deviation of the accumulated values
+     */
+    public double getStandardDeviation() {
+        if (count == 0) {
+            return 0.0;
+        }
+        double mean = getSum() / count;
+        return Math.sqrt(Math.max(0.0, getSumOfSquares() / count - mean * mean));
+    }
+
+    /**
+     * Approximate value at a quantile between 0 and 1, clamped to min and max, or 0.0 without a sketch
+     */
+    public double getQuantile(double quantile) {
+        if (count == 0 || sketch == null) {
+            return 0.0;
+        }
+        return Math.max(min, Math.min(max, sketch.getQuantile(quantile)));
+    }
+
+    /**
+     * Approximate histogram of equally wide bins between min and max, or null without a sketch
+     */
+    public List<HistogramBin> getHistogram(int bins) {
+        if (count == 0 || sketch == null) {
+            return null;
+        }
+        return sketch.getHistogram(min, max, bins);
+    }
+
+    private void addToSum(double value) {
+        double total = sum + value;
+        if (Math.abs(sum) >= Math.abs(value)) {
+            sumCompensation += (sum - total) + value;
+        } else {
+            sumCompensation += (value - total) + sum;
+        }
+        sum = total;
+    }
+
+    private void addToSumOfSquares(double value) {
+        double total = sumOfSquares + value;
+        if (Math.abs(sumOfSquares) >= Math.abs(value)) {
+            sumOfSquaresCompensation += (sumOfSquares - total) + value;
+        } else {
+            sumOfSquaresCompensation += (value - total) + sumOfSquares;
+        }
+        sumOfSquares = total;
+    }
+}
@@ -0,0 +1,51 @@
+package model;
+
+/**
+ * The metrics which can be requested from the stats endpoints, resolved once per request
+ * so the aggregation loop reads fields directly instead of switching on metric names
+ */
+public enum MetricType {
+
+    TEMPERATURE("temperature") {
+        @Override
+        public float valueOf(Metrics metrics) {
+            return metrics.getTemperature();
+        }
+    },
+    DEW_POINT("dewPoint") {
+        @Override
+        public float valueOf(Metrics metrics) {
+            return metrics.getDewPoint();
+        }
+    },
+    PRECIPITATION("precipitation") {
+        @Override
+        public float valueOf(Metrics metrics) {
+            return metrics.getPrecipation();
+        }
+    };
+
+    private final String metricName;
+
+    MetricType(String metricName) {
+        this.metricName = metricName;
+    }
+
+    public String getMetricName() {
+        return metricName;
+    }
+
+    public abstract float valueOf(Metrics metrics);
+
+    /**
+     * Returns the metric with the given request name or null if there is no such metric
+     */
+    public static MetricType fromName(String metricName) {
+        for (MetricType metricType : values()) {
+            if (metricType.metricName.equals(metricName)) {
+                return metricType;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,203 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Mergeable quantile sketch with a relative accuracy guarantee (DDSketch layout).
+ * Values are counted in logarithmically sized buckets, bucket i holding values in (gamma^(i-1), gamma^i],
+ * so any quantile is returned within RELATIVE_ACCURACY of the true value. Bucket counts can be taken back out,
+ * which lets rollups remove replaced or deleted values, and two sketches merge by adding their counts.
+ * Positive and negative values are kept in separate stores; 0.0 is never added since it marks a missing reading.
+ */
+public class QuantileSketch {
+
+    public static final double RELATIVE_ACCURACY = 0.01;
+
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    private static final int MAX_BUCKETS = 2048; // per sign, the lowest buckets are folded together beyond that
+
+    private final BucketStore positive = new BucketStore();
+    private final BucketStore negative = new BucketStore();
+
+    public void add(float value) {
+        update(value, 1);
+    }
+
+    public void remove(float value) {
+        update(value, -1);
+    }
+
+    public void merge(QuantileSketch other) {
+        positive.merge(other.positive);
+        negative.merge(other.negative);
+    }
+
+    public void clear() {
+        positive.clear();
+        negative.clear();
+    }
+
+    public long getCount() {
+        return positive.total + negative.total;
+    }
+
+    /**
+     * Value at the given quantile between 0 and 1, or 0.0 if the sketch is empty
+     */
+    public double getQuantile(double quantile) {
+        long count = getCount();
+        if (count == 0) {
+            return 0.0;
+        }
+        long rank = (long) Math.floor(quantile * (count - 1));
+        // negative values in ascending order are the negative store from its highest bucket down
+        if (rank < negative.total) {
+            long seen = 0;
+            for (int i = negative.counts.length - 1; i >= 0; i--) {
+                seen += negative.counts[i];
+                if (seen > rank) {
+                    return -valueOf(negative.offset + i);
+                }
+            }
+        }
+        long seen = negative.total;
+        for (int i = 0; i < positive.counts.length; i++) {
+            seen += positive.counts[i];
+            if (seen > rank) {
+                return valueOf(positive.offset + i);
+            }
+        }
+        return valueOf(positive.offset + positive.counts.length - 1);
+    }
+
+    /**
+     * Counts of values in equally wide bins between min and max, each bucket is placed by its representative value
+     */
+    public List<HistogramBin> getHistogram(float min, float max, int bins) {
+        long[] binCounts = new long[bins];
+        double width = (max - min) / (double) bins;
+        for (int i = 0; i < negative.counts.length; i++) {
+            addToBin(binCounts, -valueOf(negative.offset + i), negative.counts[i], min, max, width);
+        }
+        for (int i = 0; i < positive.counts.length; i++) {
+            addToBin(binCounts, valueOf(positive.offset + i), positive.counts[i], min, max, width);
+        }
+        List<HistogramBin> histogram = new ArrayList<>(bins);
+        for (int i = 0; i < bins; i++) {
+            float lower = (float) (min + i * width);
+            float upper = i == bins - 1 ? max : (float) (min + (i + 1) * width);
+            histogram.add(new HistogramBin(lower, upper, binCounts[i]));
+        }
+        return histogram;
+    }
+
+    private static void addToBin(long[] binCounts, double value, long count, float min, float max, double width) {
+        if (count == 0) {
+            return;
+        }
+        double clamped = Math.max(min, Math.min(max, value));
+        int bin = width > 0 ? (int) ((clamped - min) / width) : 0;
+        binCounts[Math.min(bin, binCounts.length - 1)] += count;
+    }
+
+    private void update(float value, long delta) {
+        if (value > 0) {
+            positive.add(indexOf(value), delta);
+        } else if (value < 0) {
+            negative.add(indexOf(-value), delta);
+        }
+    }
+
+    private static int indexOf(float magnitude) {
+        return (int) Math.ceil(Math.log(magnitude) / LOG_GAMMA);
+    }
+
+    /**
+     * Midpoint of a bucket in relative terms, at most RELATIVE_ACCURACY away from every value of the bucket
+     */
+    private static double valueOf(int index) {
+        return 2 * Math.pow(GAMMA, index) / (GAMMA + 1);
+    }
+
+    /**
+     * Dense counts of a contiguous range of bucket indexes starting at offset, grown on demand
+     */
+    private static final class BucketStore {
+
+        private static final long[] EMPTY = new long[0];
+
+        private long[] counts = EMPTY;
+        private int offset;
+        private long total;
+
+        void add(int index, long delta) {
+            if (delta > 0) {
+                ensureRange(index, index);
+            }
+            if (counts.length == 0) {
+                return;
+            }
+            // values below the kept range were folded into its lowest bucket
+            int slot = Math.max(index, offset) - offset;
+            if (slot >= counts.length) {
+                return;
+            }
+            long updated = counts[slot] + delta;
+            total += (updated < 0 ? 0 : updated) - counts[slot];
+            counts[slot] = updated < 0 ? 0 : updated;
+        }
+
+        void merge(BucketStore other) {
+            if (other.total == 0) {
+                return;
+            }
+            ensureRange(other.offset, other.offset + other.counts.length - 1);
+            for (int i = 0; i < other.counts.length; i++) {
+                if (other.counts[i] != 0) {
+                    add(other.offset + i, other.counts[i]);
+                }
+            }
+        }
+
+        void clear() {
+            Arrays.fill(counts, 0L);
+            total = 0;
+        }
+
+        private void ensureRange(int low, int high) {
+            if (counts.length == 0) {
+                offset = Math.max(low, high - MAX_BUCKETS + 1);
+                counts = new long[Math.min(MAX_BUCKETS, Math.max(16, high - offset + 1))];
+                return;
+            }
+            int currentHigh = offset + counts.length - 1;
+            if (low >= offset && high <= currentHigh) {
+                return;
+            }
+            int newHigh = Math.max(high, currentHigh);
+            int newLow = Math.max(Math.min(low, offset), newHigh - MAX_BUCKETS + 1);
+            // grow by at least half again so a drifting range does not copy on every value
+            int length = newHigh - newLow + 1;
+            if (length < counts.length + counts.length / 2) {
+                int extra = Math.min(MAX_BUCKETS, counts.length + counts.length / 2) - length;
+                if (extra > 0) {
+                    if (newLow < offset) {
+                        newLow = Math.max(newLow - extra, newHigh - MAX_BUCKETS + 1);
+                    } else {
+                        newHigh += extra;
+                    }
+                }
+            }
+            long[] grown = new long[newHigh - newLow + 1];
+            for (int i = 0; i < counts.length; i++) {
+                int target = Math.max(offset + i, newLow) - newLow;
+                grown[target] += counts[i];
+            }
+            counts = grown;
+            offset = newLow;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Time ordered points of one metric and stat, as returned by GET /stats/series.
+ * Raw series have no stat, their points are the stored values of the metric.
+ */
+public class Series {
+
+    private String metric;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String stat;
+    private List<SeriesPoint> points = new ArrayList<>();
+
+    public Series(String metric, String stat) {
+        this.metric = metric;
+        this.stat = stat;
+    }
+
+    public Series() {
+    }
+
+    public String getMetric() {
+        return metric;
+    }
+
+    public void setMetric(String metric) {
+        this.metric = metric;
+    }
+
+    public String getStat() {
+        return stat;
+    }
+
+    public void setStat(String stat) {
+        this.stat = stat;
+    }
+
+    public List<SeriesPoint> getPoints() {
+        return points;
+    }
+
+    public void setPoints(List<SeriesPoint> points) {
+        this.points = points;
+    }
+}
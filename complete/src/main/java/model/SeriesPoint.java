@@ -0,0 +1,34 @@
+package model;
+
+/**
+ * One point of a series, the timestamp is the start of its bucket or the raw measurement timestamp
+ */
+public class SeriesPoint {
+
+    private String timestamp;
+    private float value;
+
+    public SeriesPoint(String timestamp, float value) {
+        this.timestamp = timestamp;
+        this.value = value;
+    }
+
+    public SeriesPoint() {
+    }
+
+    public String getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(String timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public float getValue() {
+        return value;
+    }
+
+    public void setValue(float value) {
+        this.value = value;
+    }
+}
@@ -0,0 +1,105 @@
+package model;
+
+/**
+ * The statistics which can be requested from the stats endpoints
+ */
+public enum StatType {
+
+    MIN("min") {
+        @Override
+        public float valueOf(MetricAccumulator accumulator) {
+            return accumulator.getMin();
+        }
+    },
+    MAX("max") {
+        @Override
+        public float valueOf(MetricAccumulator accumulator) {
+            return accumulator.getMax();
+        }
+    },
+    AVERAGE("average") {
+        @Override
+        public float valueOf(MetricAccumulator accumulator) {
+            return (float) (Math.round(accumulator.getAverage() * 100.0) / 100.0);
+        }
+    },
+    COUNT("count") {
+        @Override
+        public float valueOf(MetricAccumulator accumulator) {
+            return accumulator.getCount();
+        }
+    },
+    SUM("sum") {
+        @Override
+        public float valueOf(MetricAccumulator accumulator) {
+            return (float) accumulator.getSum();
+        }
+    },
+    STDDEV("stddev") {
+        @Override
+        public float valueOf(MetricAccumulator accumulator) {
+            return (float) accumulator.getStandardDeviation();
+        }
+    },
+    P50("p50") {
+        @Override
+        public float valueOf(MetricAccumulator accumulator) {
+            return (float) accumulator.getQuantile(0.5);
+        }
+    },
+    P90("p90") {
+        @Override
+        public float valueOf(MetricAccumulator accumulator) {
+            return (float) accumulator.getQuantile(0.9);
+        }
+    },
+    P99("p99") {
+        @Override
+        public float valueOf(MetricAccumulator accumulator) {
+            return (float) accumulator.getQuantile(0.99);
+        }
+    },
+    /**
+     * The value is the count, the bins are returned next to it
+     */
+    HISTOGRAM("histogram") {
+        @Override
+        public float valueOf(MetricAccumulator accumulator) {
+            return accumulator.getCount();
+        }
+    };
+
+    public static final int HISTOGRAM_BINS = 10;
+
+    private final String statName;
+
+    StatType(String statName) {
+        this.statName = statName;
+    }
+
+    public String getStatName() {
+        return statName;
+    }
+
+    public abstract float valueOf(MetricAccumulator accumulator);
+
+    /**
+     * True for the stats which are read from a quantile sketch, percentiles are accurate to
+     * QuantileSketch.RELATIVE_ACCURACY of the value
+     */
+    public boolean needsSketch() {
+        return this == P50 || this == P90 || this == P99 || this == HISTOGRAM;
+    }
+
+    /**
+     * Returns the stat with the given request name (case insensitive) or null if there is no such stat
+     */
+    public static StatType fromName(String statName) {
+        for (StatType statType : values()) {
+            if (statType.statName.equalsIgnoreCase(statName)) {
+                return statType;
+            }
+        }
+        return null;
+    }
+}
@@ -1,13 +1,16 @@
 package model;
 
-import javax.xml.bind.annotation.XmlRootElement;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
 
-@XmlRootElement
 public class StatsResponse {
 
     private String metric;
     private String stat;
     private float value;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<HistogramBin> histogram; // only for the histogram stat
 
     public StatsResponse(String metric, String stat, float value){
         this.metric = metric;
@@ -42,5 +45,13 @@ public class StatsResponse {
         this.value = value;
     }
 
+    public List<HistogramBin> getHistogram() {
+        return histogram;
+    }
+
+    public void setHistogram(List<HistogramBin> histogram) {
+        this.histogram = histogram;
+    }
+
 
 }
@@ -3,16 +3,34 @@ package service;
 
 import model.Measurements;
 import model.Metrics;
+import model.Series;
 import model.StatsRequest;
 import model.StatsResponse;
+import store.MeasurementBatch;
+import store.MeasurementStore;
 
+import java.time.Duration;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
+/**
+ * Measurement operations, timestamps are canonical epoch milliseconds (UTC) parsed by the controller
+ */
 public interface MeasurementService {
-    void addMeasurement(String timestamp, Metrics metrics);
-    ArrayList<Measurements> getMeasurement(String timestamp);
-    Metrics deleteMeasurement(String timestamp);
-    int updateMeasurement(String timestamp, Metrics metrics);
-    int patchMeasurement(String timestamp, Metrics metrics);
+    void addMeasurement(long timestamp, Metrics metrics);
+    void addMeasurements(long[] timestamps, Metrics[] metrics);
+    void addMeasurements(MeasurementBatch batch);
+    Measurements getMeasurement(long timestamp);
+    ArrayList<Measurements> getMeasurements(LocalDate date);
+    void exportMeasurements(long fromInclusive, long toExclusive, MeasurementStore.MeasurementVisitor visitor);
+    Metrics deleteMeasurement(long timestamp);
+    int updateMeasurement(long timestamp, Metrics metrics, String ifMatch);
+    int patchMeasurement(long timestamp, Metrics metrics, String ifMatch);
     ArrayList<StatsResponse> getMeasurementStatistics(StatsRequest statsRequest);
+    ArrayList<Series> getSeries(List<String> metrics, List<String> stats, long fromInclusive, long toExclusive,
+                                Duration interval, int maxPoints);
+    ArrayList<StatsResponse> getLiveStatistics(Duration window, List<String> metrics, List<String> stats);
+    Map<String, Long> getStatsCacheCounters();
 }
\ No newline at end of file
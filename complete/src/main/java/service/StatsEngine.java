@@ -0,0 +1,19 @@
+package service;
+
+import model.Series;
+import model.StatsRequest;
+import model.StatsResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Computes metric statistics over a time range of the measurement store in a single pass
+ */
+public interface StatsEngine {
+    ArrayList<StatsResponse> getStatistics(StatsRequest statsRequest);
+    ArrayList<StatsResponse> getStatistics(List<String> metrics, List<String> stats, long fromInclusive, long toExclusive);
+    ArrayList<Series> getSeries(List<String> metrics, List<String> stats, long fromInclusive, long toExclusive,
+                                long intervalMillis, int maxPoints);
+    ArrayList<Series> getRawSeries(List<String> metrics, long fromInclusive, long toExclusive, int maxPoints);
+}
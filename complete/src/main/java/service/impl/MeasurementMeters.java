@@ -0,0 +1,68 @@
+package service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import store.MeasurementStore;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters of the measurement hot paths, served by Actuator at /actuator/metrics and /actuator/prometheus.
+ * Meters are registered once, the hot paths only add to them, which costs a few uncontended adds and
+ * two System.nanoTime calls per timed phase. The store size gauge is only read when the registry is scraped.
+ */
+@Component
+public class MeasurementMeters {
+
+    private final Counter ingestedRows;
+    private final Timer parseTimer;
+    private final Timer aggregationTimer;
+    private final Timer serializationTimer;
+    private final DistributionSummary statsRows;
+
+    public MeasurementMeters(MeterRegistry meterRegistry, MeasurementStore measurementStore) {
+        ingestedRows = Counter.builder("measurement.ingest.rows")
+                .description("Measurements written by single, batch and streamed adds")
+                .baseUnit("rows")
+                .register(meterRegistry);
+        parseTimer = statsPhase(meterRegistry, "parse");
+        aggregationTimer = statsPhase(meterRegistry, "aggregation");
+        serializationTimer = statsPhase(meterRegistry, "serialization");
+        statsRows = DistributionSummary.builder("measurement.stats.rows")
+                .description("Readings covered by one stats query, whether merged from rollups or read row by row")
+                .baseUnit("rows")
+                .register(meterRegistry);
+        Gauge.builder("measurement.store.size", measurementStore, MeasurementStore::size)
+                .description("Measurements currently stored")
+                .baseUnit("rows")
+                .register(meterRegistry);
+    }
+
+    public void ingested(int rows) {
+        ingestedRows.increment(rows);
+    }
+
+    public void parsed(long startNanos) {
+        parseTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void aggregated(long startNanos, long rows) {
+        aggregationTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        statsRows.record(rows);
+    }
+
+    public void serialized(long startNanos) {
+        serializationTimer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static Timer statsPhase(MeterRegistry meterRegistry, String phase) {
+        return Timer.builder("measurement.stats.phase")
+                .description("Time a stats request spends parsing its parameters, aggregating and serializing the result")
+                .tag("phase", phase)
+                .register(meterRegistry);
+    }
+}
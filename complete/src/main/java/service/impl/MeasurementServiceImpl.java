@@ -2,18 +2,29 @@ package service.impl;
 
 
 import model.Measurements;
+import model.MetricAccumulator;
+import model.MetricType;
 import model.Metrics;
+import model.Series;
 import model.StatsRequest;
 import model.StatsResponse;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import service.MeasurementService;
+import service.StatsEngine;
+import store.MeasurementBatch;
+import store.MeasurementLog;
+import store.MeasurementStore;
+import store.impl.LiveWindows;
+import store.impl.RollupIndex;
+import util.MeasurementETag;
 import util.WeatherTrackerUtil;
 
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -22,273 +33,400 @@ import java.util.Map;
 @Component
 public class MeasurementServiceImpl implements MeasurementService {
     
-    private Map<String, Metrics> weatherData = new LinkedHashMap<>(); // The Map which will contain all the data entered during execution
+    @Autowired
+    private MeasurementStore measurementStore; // Time ordered store which contains all the data entered during execution
+
+    @Autowired
+    private RollupIndex rollupIndex; // Hourly and daily rollups which are kept up to date on every write
+
+    @Autowired
+    private LiveWindows liveWindows; // Sliding window stats ending now, kept up to date on every write
+
+    @Autowired
+    private StatsEngine statsEngine;
+
+    @Autowired
+    private MeasurementLog measurementLog; // Write-ahead log, a no-op unless persistence is enabled
+
+    @Autowired
+    private StripedLock writeLocks; // Orders writes to the same timestamp
+
+    @Autowired
+    private SnapshotRegistry snapshotRegistry; // Point-in-time views for range reads
+
+    @Autowired
+    private StatsCache statsCache; // Stats results, dropped by writes into their range once the write lock is released
+
+    @Autowired
+    private MeasurementMeters measurementMeters; // Ingest, store and stats meters served by Actuator
 
     /**
      * This method contains the main implementation of add measurement feature
      * it will add a timestamp and associated metrics in Internal database
      */
     @Override
-    public void addMeasurement(String timestamp, Metrics metrics) {
-        weatherData.put(timestamp, metrics);
+    public void addMeasurement(long epochMillis, Metrics metrics) {
+        long sequence;
+        writeLocks.lock(epochMillis);
+        try {
+            snapshotRegistry.beforeWrite(epochMillis);
+            applyPut(epochMillis, metrics);
+            sequence = measurementLog.logPut(epochMillis, metrics);
+        } finally {
+            writeLocks.unlock(epochMillis);
+        }
+        statsCache.invalidate(epochMillis, epochMillis);
+        measurementLog.awaitDurable(sequence);
+        measurementMeters.ingested(1);
     }
     
+    /**
+     * This method contains the main implementation of bulk add measurement feature
+     * it will add an already validated batch of measurements, timestamps are in epoch milliseconds
+     */
+    @Override
+    public void addMeasurements(long[] timestamps, Metrics[] metrics) {
+        Metrics[] previous = new Metrics[timestamps.length];
+        long sequence = 0;
+        int[] locked = writeLocks.lockAll(timestamps, timestamps.length);
+        try {
+            snapshotRegistry.beforeWrites(timestamps, timestamps.length);
+            rollupIndex.beginWrites(timestamps, timestamps.length);
+            liveWindows.beginWrites(timestamps, timestamps.length);
+            try {
+                measurementStore.putAll(timestamps, metrics, previous);
+            } catch (RuntimeException e) {
+                for (long timestamp : timestamps) {
+                    rollupIndex.abortWrite(timestamp);
+                    liveWindows.abortWrite(timestamp);
+                }
+                throw e;
+            }
+            rollupIndex.endWrites(timestamps, previous, metrics);
+            liveWindows.endWrites(timestamps, previous, metrics);
+            for (int i = 0; i < timestamps.length; i++) {
+                sequence = measurementLog.logPut(timestamps[i], metrics[i]);
+            }
+        } finally {
+            writeLocks.unlockAll(locked);
+        }
+        statsCache.invalidate(timestamps, timestamps.length);
+        measurementLog.awaitDurable(sequence);
+        measurementMeters.ingested(timestamps.length);
+    }
+
+    /**
+     * This method contains the main implementation of streaming add measurement feature
+     * it will add one batch of streamed rows, the batch can be reused once this returns
+     */
+    @Override
+    public void addMeasurements(MeasurementBatch batch) {
+        long sequence;
+        int[] locked = writeLocks.lockAll(batch.getTimestamps(), batch.size());
+        try {
+            snapshotRegistry.beforeWrites(batch.getTimestamps(), batch.size());
+            rollupIndex.beginWrites(batch.getTimestamps(), batch.size());
+            liveWindows.beginWrites(batch.getTimestamps(), batch.size());
+            try {
+                measurementStore.putBatch(batch);
+            } catch (RuntimeException e) {
+                for (int i = 0; i < batch.size(); i++) {
+                    rollupIndex.abortWrite(batch.getTimestamp(i));
+                    liveWindows.abortWrite(batch.getTimestamp(i));
+                }
+                throw e;
+            }
+            rollupIndex.endWrites(batch);
+            liveWindows.endWrites(batch);
+            sequence = measurementLog.logBatch(batch);
+        } finally {
+            writeLocks.unlockAll(locked);
+        }
+        statsCache.invalidate(batch.getTimestamps(), batch.size());
+        measurementLog.awaitDurable(sequence);
+        measurementMeters.ingested(batch.size());
+    }
+
     /**
      * This method contains the main implementation of get measurement feature
-     * it will get information based on a particular timestamp or a date
+     * it will get the measurement stored for a particular timestamp
      */
     @Override
-    public ArrayList<Measurements> getMeasurement(String timestamp) {
+    public Measurements getMeasurement(long epochMillis) {
+        Metrics metricData = measurementStore.get(epochMillis);
+        if(metricData == null) {
+            return null;
+        }
+        Measurements m = new Measurements(
+            WeatherTrackerUtil.convertEpochMillisToString(epochMillis),
+            metricData.getTemperature(),
+            metricData.getDewPoint(),
+            metricData.getPrecipation()
+        );
+        return m;
+    }
+
+    /**
+     * This method contains the main implementation of get measurements by date feature
+     * it will get all measurements of a UTC day in time order
+     */
+    @Override
+    public ArrayList<Measurements> getMeasurements(LocalDate date) {
         ArrayList<Measurements> result = new ArrayList<>();
-        if(timestamp.toString().length() > 10) {
-			Metrics metricData = weatherData.get(timestamp);		
-			if(metricData != null) {
-			    Measurements m = new Measurements(
-			        timestamp,
-			        metricData.getTemperature(),
-			        metricData.getDewPoint(),
-			        metricData.getPrecipation()
-			    );
-			    result.add(m);
-			}
-		} else {
-		    Iterator<Map.Entry<String, Metrics>> iterator = weatherData.entrySet().iterator();
-		    LocalDate localTimestamp = LocalDate.parse(timestamp);
-		    while(iterator.hasNext()) {
-		        Map.Entry<String, Metrics> entry = iterator.next();
-		        String[] entryKeySplit = entry.getKey().split("(?:-|T)");
-		        
-		        int year = Integer.parseInt(entryKeySplit[0]);
-		        int month = Integer.parseInt(entryKeySplit[1]);
-		        int day = Integer.parseInt(entryKeySplit[2]);
-		        
-		        if(year == localTimestamp.getYear() &&
-		        month == localTimestamp.getMonth().getValue() &&
-		        day == localTimestamp.getDayOfMonth()
-		        ) {
-		            Measurements m = new Measurements(
-			        entry.getKey(),
-			        entry.getValue().getTemperature(),
-			        entry.getValue().getDewPoint(),
-			        entry.getValue().getPrecipation()
-			    );
-		            result.add(m);
-		        }
-		    }
-		}
-		WeatherTrackerUtil.sortMeasurementList(result);
-		for (Measurements object: result) {
-            System.out.println(object);
+        // the store is time ordered, so a day is a single range scan and comes back already sorted
+        long dayStart = WeatherTrackerUtil.convertLocalDateToEpochMillis(date);
+        long dayEnd = WeatherTrackerUtil.convertLocalDateToEpochMillis(date.plusDays(1));
+        try (ReadSnapshot snapshot = snapshotRegistry.open(dayStart, dayEnd)) {
+            snapshot.scan(dayStart, dayEnd, (entryTimestamp, entryMetrics) -> {
+                Measurements m = new Measurements(
+                    WeatherTrackerUtil.convertEpochMillisToString(entryTimestamp),
+                    entryMetrics.getTemperature(),
+                    entryMetrics.getDewPoint(),
+                    entryMetrics.getPrecipation()
+                );
+                result.add(m);
+            });
         }
         return result;
     }
     
+    /**
+     * This method contains the main implementation of export measurement feature
+     * it will hand every measurement of a range to the visitor in time order without collecting them,
+     * the rows are those of the moment the export started even if writes go on while it runs
+     */
+    @Override
+    public void exportMeasurements(long fromInclusive, long toExclusive, MeasurementStore.MeasurementVisitor visitor) {
+        try (ReadSnapshot snapshot = snapshotRegistry.open(fromInclusive, toExclusive)) {
+            snapshot.scan(fromInclusive, toExclusive, visitor);
+        }
+    }
+
     /**
      * This method contains the main implementation of delete measurement feature
      * it will delete information based on a timestamp
      */
     @Override
-    public Metrics deleteMeasurement(String timestamp) {
-    	return weatherData.remove(timestamp);
+    public Metrics deleteMeasurement(long epochMillis) {
+        Metrics removed;
+        long sequence = 0;
+        writeLocks.lock(epochMillis);
+        try {
+            snapshotRegistry.beforeWrite(epochMillis);
+            removed = applyRemove(epochMillis);
+            if(removed != null) {
+                sequence = measurementLog.logRemove(epochMillis);
+            }
+        } finally {
+            writeLocks.unlock(epochMillis);
+        }
+        if(removed != null) {
+            statsCache.invalidate(epochMillis, epochMillis);
+        }
+        measurementLog.awaitDurable(sequence);
+        return removed;
     }
     
     /**
      * This method contains the main implementation of update measurement feature
-     * it will update information related to metrics based on a particular timestamp
+     * it will update information related to metrics based on a particular timestamp,
+     * with an If-Match value only if the stored metrics still carry that entity tag
      */
     @Override
-    public int updateMeasurement(String timestamp, Metrics metrics) {
-    	if(weatherData.containsKey(timestamp)) {
-    		weatherData.put(timestamp, metrics);
-        	return 204;
-    	} else {
-    		return 404;
-    	}
+    public int updateMeasurement(long epochMillis, Metrics metrics, String ifMatch) {
+        long sequence;
+        writeLocks.lock(epochMillis);
+        try {
+            if(ifMatch != null) {
+                Metrics current = measurementStore.get(epochMillis);
+                if(current == null) {
+                    return 404;
+                }
+                if(!MeasurementETag.matches(ifMatch, current)) {
+                    return 412;
+                }
+            }
+            snapshotRegistry.beforeWrite(epochMillis);
+            if(applyReplace(epochMillis, metrics) == null) {
+                return 404;
+            }
+            sequence = measurementLog.logPut(epochMillis, metrics);
+        } finally {
+            writeLocks.unlock(epochMillis);
+        }
+        statsCache.invalidate(epochMillis, epochMillis);
+        measurementLog.awaitDurable(sequence);
+        return 204;
     }
     
     /**
      * This method contains the main implementation of update measurement feature
-     * it will patch information related to metrics based on a particular timestamp
+     * it will patch information related to metrics based on a particular timestamp.
+     * The read, merge and write run under the lock of the timestamp, so concurrent patches of the same
+     * measurement are applied one after the other and none of them is lost.
      */
     @Override
-    public int patchMeasurement(String timestamp, Metrics metrics) {
-    	if(weatherData.containsKey(timestamp)) {
-    		Metrics oldMetric = weatherData.get(timestamp);
-    		if(metrics.getPrecipation() != Float.MIN_VALUE) {
-    			oldMetric.setPrecipation(metrics.getPrecipation());
-    		}
-    		
-    		if(metrics.getDewPoint() != Float.MIN_VALUE) {
-    			oldMetric.setDewPoint(metrics.getDewPoint());
-    		}
-    		
-    		if(metrics.getTemperature() != Float.MIN_VALUE) {
-    			oldMetric.setTemperature(metrics.getTemperature());
-    		}
-    		weatherData.put(timestamp, oldMetric);
-    		return 204;
-    	} else {
-    		return 404;
-    	}
+    public int patchMeasurement(long epochMillis, Metrics metrics, String ifMatch) {
+        long sequence;
+        writeLocks.lock(epochMillis);
+        try {
+            Metrics oldMetric = measurementStore.get(epochMillis);
+            if(oldMetric == null) {
+                return 404;
+            }
+            if(!MeasurementETag.matches(ifMatch, oldMetric)) {
+                return 412;
+            }
+            // the store may hand out copies, so the patched metrics are written back instead of changed in place
+            Metrics patched = new Metrics(oldMetric.getTemperature(), oldMetric.getDewPoint(), oldMetric.getPrecipation());
+            if(metrics.getPrecipation() != Float.MIN_VALUE) {
+                patched.setPrecipation(metrics.getPrecipation());
+            }
+
+            if(metrics.getDewPoint() != Float.MIN_VALUE) {
+                patched.setDewPoint(metrics.getDewPoint());
+            }
+
+            if(metrics.getTemperature() != Float.MIN_VALUE) {
+                patched.setTemperature(metrics.getTemperature());
+            }
+            snapshotRegistry.beforeWrite(epochMillis);
+            if(applyReplace(epochMillis, patched) == null) {
+                return 404;
+            }
+            sequence = measurementLog.logPut(epochMillis, patched);
+        } finally {
+            writeLocks.unlock(epochMillis);
+        }
+        statsCache.invalidate(epochMillis, epochMillis);
+        measurementLog.awaitDurable(sequence);
+        return 204;
     }
     
     /**
      * This method contains the main implementation of stats measurement feature
-     * it will retrieve stats information related to metrics between particular timestamps
+     * it will retrieve stats information related to metrics between particular timestamps,
+     * repeated requests are answered from the stats cache until a write lands in their range
      */
     @Override
 	public ArrayList<StatsResponse> getMeasurementStatistics(StatsRequest statsRequest) {
+		StatsCache.Key key = new StatsCache.Key(
+				statsRequest.getMetric(),
+				statsRequest.getStats(),
+				WeatherTrackerUtil.convertLocalDateTimeToEpochMillis(statsRequest.getFromDateTime()),
+				WeatherTrackerUtil.convertLocalDateTimeToEpochMillis(statsRequest.getToDateTime()));
+		return statsCache.get(key, k -> statsEngine.getStatistics(
+				k.getMetrics(), k.getStats(), k.getFromInclusive(), k.getToExclusive()));
+	}
+
+    /**
+     * This method contains the main implementation of stats series feature
+     * it will retrieve one value per interval and requested stat of every requested metric,
+     * without an interval the stored values themselves, in both cases downsampled to maxPoints if above 0
+     */
+    @Override
+    public ArrayList<Series> getSeries(List<String> metrics, List<String> stats, long fromInclusive, long toExclusive,
+                                       Duration interval, int maxPoints) {
+        if (interval == null) {
+            return statsEngine.getRawSeries(metrics, fromInclusive, toExclusive, maxPoints);
+        }
+        return statsEngine.getSeries(metrics, stats, fromInclusive, toExclusive, interval.toMillis(), maxPoints);
+    }
+
+    /**
+     * This method contains the main implementation of live stats feature
+     * it will retrieve stats of the requested metrics over a sliding window ending now,
+     * returns null if no window of that length is kept
+     */
+    @Override
+    public ArrayList<StatsResponse> getLiveStatistics(Duration window, List<String> metrics, List<String> stats) {
+        MetricAccumulator[] accumulators = new MetricAccumulator[MetricType.values().length];
+        for (MetricType metricType : MetricType.values()) {
+            accumulators[metricType.ordinal()] = new MetricAccumulator();
+        }
+        if (!liveWindows.aggregate(window, accumulators)) {
+            return null;
+        }
+        return StatsEngineImpl.toResponses(metrics, stats, accumulators);
+    }
+
+    /**
+     * Hit, miss, eviction and invalidation counters of the stats cache
+     */
+    @Override
+    public Map<String, Long> getStatsCacheCounters() {
+        return statsCache.counters();
+    }
 
-		ArrayList<StatsResponse> statsResponseList = new ArrayList<StatsResponse>();
-		Map<String, Metrics> weatherDataForStats = new LinkedHashMap<>();
- 		Iterator<Map.Entry<String, Metrics>> iterator = weatherData.entrySet().iterator();
-		while(iterator.hasNext()) {
-			Map.Entry<String, Metrics> entry = iterator.next();
-			LocalDateTime localTimestamp = WeatherTrackerUtil.convertStringToLocalDate(entry.getKey());
-			
-			if((localTimestamp.isEqual(statsRequest.getFromDateTime())
-					|| localTimestamp.isAfter(statsRequest.getFromDateTime()))
-					&& (localTimestamp.isBefore(statsRequest.getToDateTime())
-					)) {
-				weatherDataForStats.put(entry.getKey(),entry.getValue());
-			}
-		}
-		
-    	for(String metric : statsRequest.getMetric()){
-			for(String stat : statsRequest.getStats()) {
-				StatsResponse statsResp = new StatsResponse();
-				statsResp.setMetric(metric);
-				statsResp.setStat(stat);
-				
-				
-				Iterator<Map.Entry<String, Metrics>> statsIterator = weatherDataForStats.entrySet().iterator();
-				if (stat.equalsIgnoreCase("min")) {
-					while (statsIterator.hasNext()) {
-						Map.Entry<String, Metrics> statsEntry = statsIterator.next();
-						switch (metric) {
-							case "temperature":
-								if(statsResp.getValue() == 0.0f) {
-									statsResp.setValue(statsEntry.getValue().getTemperature());
-								}
-								if (statsResp.getValue() > statsEntry.getValue().getTemperature()) {
-									statsResp.setValue(statsEntry.getValue().getTemperature());
-								}
-								break;
-							case "dewPoint":
+    /**
+     * Rebuilds the store and the rollups from the measurement log, replayed writes are not logged again
+     */
+    @PostConstruct
+    public void recover() {
+        measurementLog.recover(new MeasurementLog.ReplayHandler() {
+            @Override
+            public void put(long timestamp, Metrics metrics) {
+                applyPut(timestamp, metrics);
+            }
 
-								if(statsResp.getValue() == 0.0f) {
-									statsResp.setValue(statsEntry.getValue().getDewPoint());
-								}
-								if (statsEntry.getValue().getDewPoint() != 0.0f &&
-										statsResp.getValue() > statsEntry.getValue().getDewPoint()) {
-									statsResp.setValue(statsEntry.getValue().getDewPoint());
-								}
+            @Override
+            public void remove(long timestamp) {
+                applyRemove(timestamp);
+            }
+        });
+    }
+
+    /**
+     * Stores one measurement and keeps the rollups in step, callers hold the write lock of the timestamp
+     */
+    private Metrics applyPut(long epochMillis, Metrics metrics) {
+        rollupIndex.beginWrite(epochMillis);
+        liveWindows.beginWrite(epochMillis);
+        Metrics previous;
+        try {
+            previous = measurementStore.put(epochMillis, metrics);
+        } catch (RuntimeException e) {
+            rollupIndex.abortWrite(epochMillis);
+            liveWindows.abortWrite(epochMillis);
+            throw e;
+        }
+        rollupIndex.endWrite(epochMillis, previous, metrics);
+        liveWindows.endWrite(epochMillis, previous, metrics);
+        return previous;
+    }
 
-								break;
-				 			case "precipitation":
-				 				if(statsResp.getValue() == 0.0f) {
-				 					statsResp.setValue(statsEntry.getValue().getPrecipation());
-				 				}
-				 				if (statsEntry.getValue().getPrecipation() != 0.0f &&
-				 						statsResp.getValue() > statsEntry.getValue().getPrecipation()) {
-				 					statsResp.setValue(statsEntry.getValue().getPrecipation());
-				 				}
-				 				break;
-							default:
-								break;
-						}
-					}
-				}
-				if (stat.equalsIgnoreCase("max")) {
-					while (statsIterator.hasNext()) {
-						Map.Entry<String, Metrics> statsEntry = statsIterator.next();
-						switch (metric) {
-							case "temperature":
-								if(statsResp.getValue() == 0.0f) {
-									statsResp.setValue(statsEntry.getValue().getTemperature());
-								}
-								if (statsEntry.getValue().getTemperature() != 0.0f &&
-										statsResp.getValue() < statsEntry.getValue().getTemperature()) {
-									statsResp.setValue(statsEntry.getValue().getTemperature());
-								}
-								break;
-							case "dewPoint":
-								if(statsResp.getValue() == 0.0f) {
-									statsResp.setValue(statsEntry.getValue().getDewPoint());
-								}
-								if (statsEntry.getValue().getDewPoint() != 0.0f &&
-										statsResp.getValue() < statsEntry.getValue().getDewPoint()) {
-									statsResp.setValue(statsEntry.getValue().getDewPoint());
-								}
-								break;
-				 			case "precipitation":
-				 				if(statsResp.getValue() == 0.0f) {
-				 					statsResp.setValue(statsEntry.getValue().getPrecipation());
-				 				}
-				 				if (statsEntry.getValue().getPrecipation() != 0.0f &&
-				 						statsResp.getValue() < statsEntry.getValue().getPrecipation()) {
-				 					statsResp.setValue(statsEntry.getValue().getPrecipation());
-				 				}
-				 				break;
-							default:
-								break;
-						}
-					}
-				}
-				if (stat.equalsIgnoreCase("average")) {
-					float temperatureAvg = 0.0f;
-					int temperatureCount=0;
-					float dewpointAvg = 0.0f;
-					int dewpointCount=0;
-					float precipAvg = 0.0f;
-					int precipCount=0;
+    /**
+     * Replaces an existing measurement and keeps the rollups in step, returns null when nothing was stored
+     */
+    private Metrics applyReplace(long epochMillis, Metrics metrics) {
+        rollupIndex.beginWrite(epochMillis);
+        liveWindows.beginWrite(epochMillis);
+        Metrics previous;
+        try {
+            previous = measurementStore.replace(epochMillis, metrics);
+        } catch (RuntimeException e) {
+            rollupIndex.abortWrite(epochMillis);
+            liveWindows.abortWrite(epochMillis);
+            throw e;
+        }
+        rollupIndex.endWrite(epochMillis, previous, previous != null ? metrics : null);
+        liveWindows.endWrite(epochMillis, previous, previous != null ? metrics : null);
+        return previous;
+    }
 
-					while (statsIterator.hasNext()) {
-						Map.Entry<String, Metrics> statsEntry = statsIterator.next();
-						switch (metric) {
-							case "temperature":
-							    if(statsEntry.getValue().getTemperature() != 0.0f){
-									temperatureAvg=	temperatureAvg + statsEntry.getValue().getTemperature();
-									temperatureCount ++;
-								}
-								break;
-							case "dewPoint":
-								if(statsEntry.getValue().getDewPoint() != 0.0f){
-									dewpointAvg=	dewpointAvg + statsEntry.getValue().getDewPoint();
-									dewpointCount ++;
-								}
-								break;
-				 			case "precipitation":
-				 				if(statsEntry.getValue().getPrecipation() != 0.0f){
-				 					precipAvg=	precipAvg + statsEntry.getValue().getPrecipation();
-				 					precipCount ++;
-				 				}
-				 				break;
-							default:
-								break;
-						}
-					}
-					switch (metric) {
-						case "temperature":
-							if(temperatureCount!=0) temperatureAvg= temperatureAvg/temperatureCount;
-							temperatureAvg = (float) (Math.round(temperatureAvg * 100.0)/100.0);
-							statsResp.setValue(temperatureAvg);
-							break;
-						case "dewPoint":
-							if(dewpointCount!=0) dewpointAvg= dewpointAvg/dewpointCount;
-							dewpointAvg = (float) (Math.round(dewpointAvg * 100.0)/100.0);
-							statsResp.setValue(dewpointAvg);
-							break;
-				 		case "precipitation":
-				 			if(precipCount!=0) precipAvg= precipAvg/precipCount;
-				 			statsResp.setValue(dewpointAvg);
-				 			break;
-					}
-				}
-				statsResponseList.add(statsResp);
-			}
-		}
-		WeatherTrackerUtil.removeItemIfNull(statsResponseList);
-    	return statsResponseList;
-	}
-}
\ No newline at end of file
+    private Metrics applyRemove(long epochMillis) {
+        rollupIndex.beginWrite(epochMillis);
+        liveWindows.beginWrite(epochMillis);
+        Metrics removed;
+        try {
+            removed = measurementStore.remove(epochMillis);
+        } catch (RuntimeException e) {
+            rollupIndex.abortWrite(epochMillis);
+            liveWindows.abortWrite(epochMillis);
+            throw e;
+        }
+        rollupIndex.endWrite(epochMillis, removed, null);
+        liveWindows.endWrite(epochMillis, removed, null);
+        return removed;
+    }
+}
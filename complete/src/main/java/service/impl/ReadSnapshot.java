@@ -0,0 +1,184 @@
+package service.impl;
+
+import model.MetricAccumulator;
+import model.MetricType;
+import model.Metrics;
+import store.MeasurementStore;
+import store.impl.RollupIndex;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeSet;
+
+/**
+ * A point-in-time view of a time range of the measurement store opened by SnapshotRegistry.
+ * Reads go to the live store and take the before-image of any row written after the snapshot was opened,
+ * so repeated reads of a snapshot return the same rows no matter what is written in the meantime.
+ * Reads have to stay inside the range the snapshot was opened for, before-images are only kept for that range.
+ * Once the registry expires the snapshot its reads throw IllegalStateException.
+ */
+final class ReadSnapshot implements AutoCloseable {
+
+    private final SnapshotRegistry registry;
+    private final MeasurementStore measurementStore;
+    private final NavigableMap<Long, SnapshotRegistry.UndoChain> undoLog;
+    private final long version;
+    private final long fromInclusive;
+    private final long toExclusive;
+    private volatile boolean expired;
+    private boolean closed;
+
+    ReadSnapshot(SnapshotRegistry registry, MeasurementStore measurementStore, long version,
+                 long fromInclusive, long toExclusive) {
+        this.registry = registry;
+        this.measurementStore = measurementStore;
+        this.undoLog = registry.getUndoLog();
+        this.version = version;
+        this.fromInclusive = fromInclusive;
+        this.toExclusive = toExclusive;
+    }
+
+    /**
+     * Visits the rows of [fromInclusive, toExclusive) as they were when the snapshot was opened, in time order
+     */
+    void scan(long fromInclusive, long toExclusive, MeasurementStore.MeasurementVisitor visitor) {
+        long[] cursor = { fromInclusive };
+        measurementStore.scan(fromInclusive, toExclusive, (timestamp, metrics) -> {
+            // a before-image is recorded before the store changes, so it is in the log by the time the row is seen
+            visitRemoved(cursor[0], timestamp, visitor);
+            cursor[0] = timestamp + 1;
+            Metrics value = metrics;
+            SnapshotRegistry.UndoChain chain = undoLog.isEmpty() ? null : undoLog.get(timestamp);
+            if (chain != null) {
+                Metrics before = chain.valueAt(version);
+                if (before != SnapshotRegistry.UNCHANGED) {
+                    value = before;
+                }
+            }
+            // checked after the read, a before-image read before the snapshot expired was not pruned yet
+            checkExpired();
+            if (value != null) {
+                visitor.visit(timestamp, value);
+            }
+        });
+        visitRemoved(cursor[0], toExclusive, visitor);
+        checkExpired();
+    }
+
+    /**
+     * Accumulates the range as of the snapshot. The store's own aggregate is used when no row of the range
+     * was written since the snapshot, checked after the aggregate so that a racing write is never missed.
+     */
+    void aggregate(long fromInclusive, long toExclusive, MetricType[] metrics, MetricAccumulator[] accumulators) {
+        if (fromInclusive >= toExclusive) {
+            return;
+        }
+        MetricAccumulator[] live = newAccumulators(accumulators);
+        measurementStore.aggregate(fromInclusive, toExclusive, metrics, live);
+        if (changedHours(fromInclusive, toExclusive).isEmpty()) {
+            checkExpired();
+            merge(live, accumulators);
+        } else {
+            accumulate(fromInclusive, toExclusive, metrics, accumulators);
+        }
+    }
+
+    /**
+     * Accumulates the range as of the snapshot row by row
+     */
+    void accumulate(long fromInclusive, long toExclusive, MetricType[] metrics, MetricAccumulator[] accumulators) {
+        scan(fromInclusive, toExclusive, (timestamp, entryMetrics) -> {
+            for (MetricType metricType : metrics) {
+                accumulators[metricType.ordinal()].accept(metricType.valueOf(entryMetrics));
+            }
+        });
+    }
+
+    /**
+     * Start of every hour in the range which holds a row written after the snapshot was opened
+     */
+    TreeSet<Long> changedHours(long fromInclusive, long toExclusive) {
+        TreeSet<Long> hours = new TreeSet<>();
+        if (fromInclusive >= toExclusive || undoLog.isEmpty()) {
+            return hours;
+        }
+        for (Map.Entry<Long, SnapshotRegistry.UndoChain> entry : undoLog.subMap(fromInclusive, toExclusive).entrySet()) {
+            if (entry.getValue().changedAfter(version)) {
+                hours.add(RollupIndex.floor(entry.getKey(), RollupIndex.HOUR_MILLIS));
+            }
+        }
+        checkExpired();
+        return hours;
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    long getFromInclusive() {
+        return fromInclusive;
+    }
+
+    long getToExclusive() {
+        return toExclusive;
+    }
+
+    /**
+     * Called by the registry before it drops the before-images this snapshot still needs
+     */
+    void expire() {
+        expired = true;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            registry.close(this);
+        }
+    }
+
+    private void checkExpired() {
+        if (expired) {
+            throw new IllegalStateException("Snapshot of [" + fromInclusive + ", " + toExclusive
+                    + ") expired, too many writes into its range while it was open");
+        }
+    }
+
+    /**
+     * Visits rows of [fromInclusive, toExclusive) which existed at the snapshot but are gone from the live store
+     */
+    private void visitRemoved(long fromInclusive, long toExclusive, MeasurementStore.MeasurementVisitor visitor) {
+        if (fromInclusive >= toExclusive || undoLog.isEmpty()) {
+            return;
+        }
+        Long key = undoLog.ceilingKey(fromInclusive);
+        while (key != null && key < toExclusive) {
+            SnapshotRegistry.UndoChain chain = undoLog.get(key);
+            Metrics before = chain == null ? SnapshotRegistry.UNCHANGED : chain.valueAt(version);
+            checkExpired();
+            if (before != null && before != SnapshotRegistry.UNCHANGED) {
+                visitor.visit(key, before);
+            }
+            key = undoLog.higherKey(key);
+        }
+    }
+
+    private static MetricAccumulator[] newAccumulators(MetricAccumulator[] layout) {
+        MetricAccumulator[] accumulators = new MetricAccumulator[layout.length];
+        for (int i = 0; i < layout.length; i++) {
+            if (layout[i] != null) {
+                accumulators[i] = new MetricAccumulator(layout[i].hasSketch());
+            }
+        }
+        return accumulators;
+    }
+
+    private static void merge(MetricAccumulator[] source, MetricAccumulator[] target) {
+        for (int i = 0; i < target.length; i++) {
+            if (target[i] != null) {
+                target[i].merge(source[i]);
+            }
+        }
+    }
+}
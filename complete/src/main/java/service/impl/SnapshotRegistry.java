@@ -0,0 +1,262 @@
+package service.impl;
+
+import model.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import store.MeasurementStore;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Point-in-time read views of a time range of the live store, kept with an undo log instead of copies or read locks.
+ *
+ * While a snapshot is open, every writer of a timestamp inside its range records the value it is about to overwrite
+ * (its before-image) under its stripe lock and before it changes the store, tagged with an increasing version.
+ * A snapshot reads the live store and swaps in the before-image of the first write that came after it, so readers
+ * never wait for writers and writers outside every open range only pay for a volatile read.
+ *
+ * Opening a snapshot takes no write lock. The snapshot reads the version and registers its range, then waits for the
+ * writes already in progress to leave their stripes (see StripedLock.awaitReleased): those may have missed the
+ * registration, every later write sees it and records a version above the snapshot's.
+ *
+ * Before-images are dropped once no open snapshot is older than them. When more than max-undo-entries are kept
+ * anyway, because a snapshot stays open for long under heavy ingest into its range, the oldest snapshot is expired
+ * and its reads fail from then on, so a slow reader can never grow the heap without bound.
+ */
+@Component
+public class SnapshotRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(SnapshotRegistry.class);
+
+    private static final int PRUNE_THRESHOLD = 4096;
+    private static final ReadSnapshot[] NONE = new ReadSnapshot[0];
+
+    /**
+     * Marks a key that was not written since the snapshot, its live value is the snapshot value
+     */
+    static final Metrics UNCHANGED = new Metrics();
+
+    @Autowired
+    private MeasurementStore measurementStore;
+
+    @Autowired
+    private StripedLock writeLocks;
+
+    @Value("${measurement.snapshot.max-undo-entries:1000000}")
+    private int maxUndoEntries = 1_000_000;
+
+    private final AtomicLong version = new AtomicLong();
+    private final ConcurrentSkipListMap<Long, UndoChain> undoLog = new ConcurrentSkipListMap<>();
+    private final AtomicInteger undoSize = new AtomicInteger();
+    private volatile ReadSnapshot[] open = NONE; // replaced, never changed in place, under this
+
+    /**
+     * Records the current value of a timestamp if an open snapshot covers it, called under its write lock
+     * before the store is changed
+     */
+    void beforeWrite(long timestamp) {
+        ReadSnapshot[] snapshots = open;
+        if (snapshots.length == 0 || !covers(snapshots, timestamp)) {
+            return;
+        }
+        Metrics before = measurementStore.get(timestamp);
+        long writeVersion = version.incrementAndGet();
+        UndoChain chain = undoLog.get(timestamp);
+        if (chain == null || !chain.append(writeVersion, before)) {
+            // absent, or pruned away since the lookup; only writers of this timestamp add chains and they hold its stripe
+            undoLog.put(timestamp, new UndoChain(writeVersion, before));
+        }
+        if (undoSize.incrementAndGet() > maxUndoEntries) {
+            expireOldest();
+        }
+    }
+
+    /**
+     * Batch form of beforeWrite, called with the write locks of all timestamps held
+     */
+    void beforeWrites(long[] timestamps, int count) {
+        if (open.length == 0) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            beforeWrite(timestamps[i]);
+        }
+    }
+
+    /**
+     * Opens a view of [fromInclusive, toExclusive) as of now, it may only be read inside that range and has to be
+     * closed to let the registry drop before-images
+     */
+    ReadSnapshot open(long fromInclusive, long toExclusive) {
+        ReadSnapshot snapshot;
+        synchronized (this) {
+            // read before registering, so every write which sees the registration gets a later version
+            snapshot = new ReadSnapshot(this, measurementStore, version.get(), fromInclusive, toExclusive);
+            ReadSnapshot[] snapshots = Arrays.copyOf(open, open.length + 1);
+            snapshots[snapshots.length - 1] = snapshot;
+            open = snapshots;
+        }
+        writeLocks.awaitReleased();
+        return snapshot;
+    }
+
+    void close(ReadSnapshot snapshot) {
+        long prunableVersion;
+        synchronized (this) {
+            deregister(snapshot);
+            if (open.length > 0 && undoSize.get() < PRUNE_THRESHOLD) {
+                return;
+            }
+            prunableVersion = prunableVersion();
+        }
+        prune(prunableVersion);
+    }
+
+    ConcurrentSkipListMap<Long, UndoChain> getUndoLog() {
+        return undoLog;
+    }
+
+    /**
+     * Expires the oldest open snapshot and drops the before-images only it needed, called when the undo log
+     * is over budget
+     */
+    private void expireOldest() {
+        ReadSnapshot oldest;
+        long prunableVersion;
+        synchronized (this) {
+            if (undoSize.get() <= maxUndoEntries || open.length == 0) {
+                return;
+            }
+            oldest = open[0];
+            for (ReadSnapshot snapshot : open) {
+                if (snapshot.getVersion() < oldest.getVersion()) {
+                    oldest = snapshot;
+                }
+            }
+            oldest.expire();
+            deregister(oldest);
+            prunableVersion = prunableVersion();
+        }
+        log.warn("Expired the snapshot of [{}, {}), {} before-images were kept while it was open",
+                oldest.getFromInclusive(), oldest.getToExclusive(), undoSize.get());
+        prune(prunableVersion);
+    }
+
+    /**
+     * Removes a snapshot from the open ones, a snapshot which expired is no longer among them. Called under this.
+     */
+    private void deregister(ReadSnapshot snapshot) {
+        for (int i = 0; i < open.length; i++) {
+            if (open[i] == snapshot) {
+                ReadSnapshot[] snapshots = new ReadSnapshot[open.length - 1];
+                System.arraycopy(open, 0, snapshots, 0, i);
+                System.arraycopy(open, i + 1, snapshots, i, snapshots.length - i);
+                open = snapshots;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Version up to which no open snapshot needs a before-image. Called under this.
+     */
+    private long prunableVersion() {
+        // later snapshots start at the current version or above, so nothing up to here is needed by them
+        long prunable = version.get();
+        for (ReadSnapshot snapshot : open) {
+            prunable = Math.min(prunable, snapshot.getVersion());
+        }
+        return prunable;
+    }
+
+    private void prune(long upToVersion) {
+        for (Map.Entry<Long, UndoChain> entry : undoLog.entrySet()) {
+            UndoChain chain = entry.getValue();
+            int removed;
+            synchronized (chain) {
+                removed = chain.prune(upToVersion);
+                if (chain.size == 0) {
+                    chain.removed = true;
+                    undoLog.remove(entry.getKey(), chain);
+                }
+            }
+            undoSize.addAndGet(-removed);
+        }
+    }
+
+    private static boolean covers(ReadSnapshot[] snapshots, long timestamp) {
+        for (ReadSnapshot snapshot : snapshots) {
+            if (timestamp >= snapshot.getFromInclusive() && timestamp < snapshot.getToExclusive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Before-images of one timestamp in version order, guarded by the chain monitor
+     */
+    static final class UndoChain {
+
+        private long[] versions = new long[2];
+        private Metrics[] values = new Metrics[2];
+        private int size;
+        private boolean removed;
+
+        UndoChain(long writeVersion, Metrics before) {
+            versions[0] = writeVersion;
+            values[0] = before;
+            size = 1;
+        }
+
+        synchronized boolean append(long writeVersion, Metrics before) {
+            if (removed) {
+                return false;
+            }
+            if (size == versions.length) {
+                versions = Arrays.copyOf(versions, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            versions[size] = writeVersion;
+            values[size] = before;
+            size++;
+            return true;
+        }
+
+        /**
+         * Value the timestamp had at the snapshot version (null if it was absent), or UNCHANGED if it was not
+         * written since
+         */
+        synchronized Metrics valueAt(long snapshotVersion) {
+            for (int i = 0; i < size; i++) {
+                if (versions[i] > snapshotVersion) {
+                    return values[i];
+                }
+            }
+            return UNCHANGED;
+        }
+
+        synchronized boolean changedAfter(long snapshotVersion) {
+            return size > 0 && versions[size - 1] > snapshotVersion;
+        }
+
+        private int prune(long upToVersion) {
+            int pruned = 0;
+            while (pruned < size && versions[pruned] <= upToVersion) {
+                pruned++;
+            }
+            System.arraycopy(versions, pruned, versions, 0, size - pruned);
+            System.arraycopy(values, pruned, values, 0, size - pruned);
+            Arrays.fill(values, size - pruned, size, null);
+            size -= pruned;
+            return pruned;
+        }
+    }
+}
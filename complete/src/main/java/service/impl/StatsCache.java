@@ -0,0 +1,372 @@
+package service.impl;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import model.StatsResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import store.impl.RollupIndex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Bounded cache of stats results keyed by the requested metrics, stats and range, the least recently used entry
+ * is evicted first. Writes invalidate only the entries whose range covers the written timestamps, entries also
+ * expire after a time to live. A result is only kept if no write into its range was reported while it was computed.
+ * The counters are also bound to the meter registry, the hit ratio is gets{result="hit"} over all gets.
+ *
+ * Lookups take no lock. For invalidation every entry is indexed in the buckets its range overlaps, on the level
+ * whose buckets are the shortest (a day, doubling per level) that still cover the range with at most
+ * MAX_BUCKETS_PER_ENTRY buckets. A write only looks at the bucket holding its timestamp on every level in use and
+ * only locks the entries it drops, so writers do not queue on the cache.
+ */
+@Component
+public class StatsCache implements MeterBinder {
+
+    private static final long BASE_BUCKET_MILLIS = RollupIndex.DAY_MILLIS;
+    private static final int LEVELS = 36; // the last level's buckets are longer than any range of epoch milliseconds
+    private static final int MAX_BUCKETS_PER_ENTRY = 64;
+
+    private final int maxEntries;
+    private final long ttlNanos;
+
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    @SuppressWarnings("unchecked")
+    private final ConcurrentHashMap<Long, Set<Entry>>[] buckets = new ConcurrentHashMap[LEVELS];
+    private final AtomicIntegerArray levelSizes = new AtomicIntegerArray(LEVELS); // entries indexed per level
+    private final Object evictionLock = new Object();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public StatsCache(@Value("${measurement.stats-cache.max-entries:1024}") int maxEntries,
+                      @Value("${measurement.stats-cache.ttl-seconds:300}") long ttlSeconds) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        for (int level = 0; level < LEVELS; level++) {
+            buckets[level] = new ConcurrentHashMap<>();
+        }
+    }
+
+    /**
+     * Returns the cached result of a request or computes it, the computed result is only cached
+     * if no write into the range of the request was reported while it was computed
+     */
+    public ArrayList<StatsResponse> get(Key key, Function<Key, ArrayList<StatsResponse>> compute) {
+        if (maxEntries <= 0) {
+            misses.increment();
+            return compute.apply(key);
+        }
+        long now = System.nanoTime();
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            ArrayList<StatsResponse> cached = entry.result;
+            if (cached != null && now - entry.expiresAt < 0) {
+                entry.lastUsed = now;
+                hits.increment();
+                return new ArrayList<>(cached);
+            }
+        }
+        misses.increment();
+        // indexed before computing, so a write into the range drops it and tells the result apart from a stale one
+        Entry pending = new Entry(key, now);
+        index(pending);
+        Entry replaced = entries.put(key, pending);
+        if (replaced != null && replaced.drop()) {
+            unindex(replaced);
+        }
+        if (entries.size() > maxEntries) {
+            evictOverflow();
+        }
+        ArrayList<StatsResponse> result = compute.apply(key);
+        pending.complete(new ArrayList<>(result), System.nanoTime() + ttlNanos);
+        return result;
+    }
+
+    /**
+     * Drops the entries whose range covers a timestamp between the bounds, both inclusive
+     */
+    public void invalidate(long fromInclusive, long toInclusive) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        for (int level = 0; level < LEVELS; level++) {
+            if (levelSizes.get(level) == 0) {
+                continue;
+            }
+            ConcurrentHashMap<Long, Set<Entry>> levelBuckets = buckets[level];
+            long first = bucket(fromInclusive, level);
+            long last = bucket(toInclusive, level);
+            if (last - first < levelBuckets.size()) {
+                for (long bucket = first; bucket <= last; bucket++) {
+                    invalidate(levelBuckets.get(bucket), fromInclusive, toInclusive);
+                }
+            } else {
+                // a long batch on a short level, fewer buckets are in use than it spans
+                for (Map.Entry<Long, Set<Entry>> bucket : levelBuckets.entrySet()) {
+                    if (bucket.getKey() >= first && bucket.getKey() <= last) {
+                        invalidate(bucket.getValue(), fromInclusive, toInclusive);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the entries whose range covers one of the first count timestamps
+     */
+    public void invalidate(long[] timestamps, int count) {
+        if (entries.isEmpty() || count == 0) {
+            return;
+        }
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            min = Math.min(min, timestamps[i]);
+            max = Math.max(max, timestamps[i]);
+        }
+        // a batch drops everything between its first and last timestamp, batches are usually short runs of time
+        invalidate(min, max);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Counters of the cache as reported by GET /stats/cache
+     */
+    public Map<String, Long> counters() {
+        Map<String, Long> counters = new LinkedHashMap<>();
+        counters.put("hits", getHits());
+        counters.put("misses", getMisses());
+        counters.put("evictions", getEvictions());
+        counters.put("invalidations", getInvalidations());
+        counters.put("size", (long) size());
+        return counters;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("measurement.stats.cache.gets", hits, LongAdder::sum)
+                .description("Stats requests answered from the cache").tag("result", "hit").register(registry);
+        FunctionCounter.builder("measurement.stats.cache.gets", misses, LongAdder::sum)
+                .description("Stats requests which had to be computed").tag("result", "miss").register(registry);
+        FunctionCounter.builder("measurement.stats.cache.evictions", evictions, LongAdder::sum)
+                .description("Entries dropped to stay within max-entries").register(registry);
+        FunctionCounter.builder("measurement.stats.cache.invalidations", invalidations, LongAdder::sum)
+                .description("Entries dropped by writes into their range").register(registry);
+        Gauge.builder("measurement.stats.cache.size", this, StatsCache::size)
+                .description("Entries currently cached").register(registry);
+    }
+
+    /**
+     * Evicts least recently used entries until the cache is within max-entries. Only runs on misses, which
+     * compute a result anyway, so the scan for the oldest entry is cheap next to it.
+     */
+    private void evictOverflow() {
+        synchronized (evictionLock) {
+            while (entries.size() > maxEntries) {
+                Entry oldest = null;
+                for (Entry entry : entries.values()) {
+                    if (oldest == null || entry.lastUsed - oldest.lastUsed < 0) {
+                        oldest = entry;
+                    }
+                }
+                if (oldest == null) {
+                    return;
+                }
+                if (entries.remove(oldest.key, oldest) && oldest.drop()) {
+                    unindex(oldest);
+                    evictions.increment();
+                }
+            }
+        }
+    }
+
+    private void invalidate(Set<Entry> bucket, long fromInclusive, long toInclusive) {
+        if (bucket == null) {
+            return;
+        }
+        for (Entry entry : bucket) {
+            Key key = entry.key;
+            if (key.fromInclusive <= toInclusive && fromInclusive < key.toExclusive && entry.drop()) {
+                entries.remove(key, entry);
+                unindex(entry);
+                invalidations.increment();
+            }
+        }
+    }
+
+    /**
+     * Adds the entry to its buckets, under the entry monitor so a write which finds it in the first bucket
+     * cannot drop and unindex it before it is in the last
+     */
+    private void index(Entry entry) {
+        if (entry.key.fromInclusive >= entry.key.toExclusive) {
+            return; // an empty range is never written into
+        }
+        int level = entry.level;
+        levelSizes.incrementAndGet(level);
+        synchronized (entry) {
+            for (long bucket = bucket(entry.key.fromInclusive, level); bucket <= bucket(entry.key.toExclusive - 1, level); bucket++) {
+                buckets[level].compute(bucket, (k, set) -> {
+                    Set<Entry> indexed = set != null ? set : ConcurrentHashMap.newKeySet();
+                    indexed.add(entry);
+                    return indexed;
+                });
+            }
+        }
+    }
+
+    private void unindex(Entry entry) {
+        if (entry.key.fromInclusive >= entry.key.toExclusive) {
+            return;
+        }
+        int level = entry.level;
+        for (long bucket = bucket(entry.key.fromInclusive, level); bucket <= bucket(entry.key.toExclusive - 1, level); bucket++) {
+            buckets[level].computeIfPresent(bucket, (k, set) -> {
+                set.remove(entry);
+                return set.isEmpty() ? null : set;
+            });
+        }
+        levelSizes.decrementAndGet(level);
+    }
+
+    private static long bucket(long timestamp, int level) {
+        return Math.floorDiv(timestamp, BASE_BUCKET_MILLIS << level);
+    }
+
+    /**
+     * Level whose buckets cover the range with at most MAX_BUCKETS_PER_ENTRY buckets
+     */
+    private static int level(long fromInclusive, long toExclusive) {
+        int level = 0;
+        while (level < LEVELS - 1 && bucket(toExclusive - 1, level) - bucket(fromInclusive, level) >= MAX_BUCKETS_PER_ENTRY) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Normalized stats request, names are kept as given because the response echoes them
+     */
+    public static final class Key {
+        private final List<String> metrics;
+        private final List<String> stats;
+        private final long fromInclusive;
+        private final long toExclusive;
+
+        public Key(List<String> metrics, List<String> stats, long fromInclusive, long toExclusive) {
+            this.metrics = Collections.unmodifiableList(new ArrayList<>(metrics));
+            this.stats = Collections.unmodifiableList(new ArrayList<>(stats));
+            this.fromInclusive = fromInclusive;
+            this.toExclusive = toExclusive;
+        }
+
+        public List<String> getMetrics() {
+            return metrics;
+        }
+
+        public List<String> getStats() {
+            return stats;
+        }
+
+        public long getFromInclusive() {
+            return fromInclusive;
+        }
+
+        public long getToExclusive() {
+            return toExclusive;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return fromInclusive == other.fromInclusive && toExclusive == other.toExclusive
+                    && metrics.equals(other.metrics) && stats.equals(other.stats);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = metrics.hashCode();
+            result = 31 * result + stats.hashCode();
+            result = 31 * result + Long.hashCode(fromInclusive);
+            return 31 * result + Long.hashCode(toExclusive);
+        }
+    }
+
+    /**
+     * A cached result, or a pending one while it is computed. Dropping and completing are guarded by the entry
+     * monitor, so a result is never stored into an entry a write has dropped.
+     */
+    private static final class Entry {
+        final Key key;
+        final int level;
+        volatile ArrayList<StatsResponse> result; // null while the result is being computed
+        volatile long expiresAt;
+        volatile long lastUsed;
+        private boolean dropped;
+
+        Entry(Key key, long now) {
+            this.key = key;
+            this.level = level(key.fromInclusive, key.toExclusive);
+            this.lastUsed = now;
+        }
+
+        synchronized void complete(ArrayList<StatsResponse> result, long expiresAt) {
+            if (!dropped) {
+                this.expiresAt = expiresAt;
+                this.result = result;
+            }
+        }
+
+        /**
+         * Returns false if the entry was already dropped
+         */
+        synchronized boolean drop() {
+            if (dropped) {
+                return false;
+            }
+            dropped = true;
+            result = null;
+            return true;
+        }
+    }
+}
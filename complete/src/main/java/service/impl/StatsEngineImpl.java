@@ -0,0 +1,377 @@
+package service.impl;
+
+import model.MetricAccumulator;
+import model.MetricType;
+import model.Series;
+import model.SeriesPoint;
+import model.StatType;
+import model.StatsRequest;
+import model.StatsResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import service.StatsEngine;
+import store.impl.RollupIndex;
+import util.LargestTriangleThreeBuckets;
+import util.WeatherTrackerUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This is implementation of the stats engine, the requested metric and stat names are resolved
+ * to enums up front and every requested metric is accumulated in one pass over the range
+ */
+@Component
+public class StatsEngineImpl implements StatsEngine {
+
+    @Autowired
+    private RollupIndex rollupIndex;
+
+    @Autowired
+    private SnapshotRegistry snapshotRegistry;
+
+    @Autowired
+    private StatsForkJoinPool statsForkJoinPool; // Splits long ranges into partitions aggregated in parallel
+
+    @Autowired
+    private MeasurementMeters measurementMeters; // Aggregation time and rows per stats query
+
+    @Override
+    public ArrayList<StatsResponse> getStatistics(StatsRequest statsRequest) {
+        return getStatistics(
+                statsRequest.getMetric(),
+                statsRequest.getStats(),
+                WeatherTrackerUtil.convertLocalDateTimeToEpochMillis(statsRequest.getFromDateTime()),
+                WeatherTrackerUtil.convertLocalDateTimeToEpochMillis(statsRequest.getToDateTime()));
+    }
+
+    @Override
+    public ArrayList<StatsResponse> getStatistics(List<String> metrics, List<String> stats,
+                                                  long fromInclusive, long toExclusive) {
+        long start = System.nanoTime();
+        MetricType[] scanMetrics = resolveMetrics(metrics);
+        MetricAccumulator[] accumulators = newAccumulators(scanMetrics, needsSketch(stats));
+        long rows = 0;
+        if (scanMetrics.length > 0) {
+            // all parts of the answer are read as of one point in time, concurrent writes are not waited for
+            try (ReadSnapshot snapshot = snapshotRegistry.open(fromInclusive, toExclusive)) {
+                aggregate(snapshot, fromInclusive, toExclusive, scanMetrics, accumulators);
+            }
+            for (MetricType metricType : scanMetrics) {
+                rows = Math.max(rows, accumulators[metricType.ordinal()].getCount());
+            }
+        }
+        measurementMeters.aggregated(start, rows);
+
+        return toResponses(metrics, stats, accumulators);
+    }
+
+    /**
+     * Buckets of a whole number of hours are merged from the rollup tiers, shorter buckets are filled
+     * in one ordered pass over the rows of the range. Buckets are aligned to multiples of the interval
+     * since the epoch and empty buckets are left out.
+     */
+    @Override
+    public ArrayList<Series> getSeries(List<String> metrics, List<String> stats, long fromInclusive, long toExclusive,
+                                       long intervalMillis, int maxPoints) {
+        MetricType[] scanMetrics = resolveMetrics(metrics);
+        ArrayList<Series> series = new ArrayList<>();
+        List<MetricType> seriesMetrics = new ArrayList<>();
+        List<StatType> seriesStats = new ArrayList<>();
+        for (String metric : metrics) {
+            MetricType metricType = MetricType.fromName(metric);
+            for (String stat : stats) {
+                StatType statType = StatType.fromName(stat);
+                if (metricType != null && statType != null) {
+                    series.add(new Series(metric, stat));
+                    seriesMetrics.add(metricType);
+                    seriesStats.add(statType);
+                }
+            }
+        }
+        if (series.isEmpty()) {
+            return series;
+        }
+
+        SeriesBuffer[] buffers = new SeriesBuffer[series.size()];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = new SeriesBuffer();
+        }
+        BucketConsumer addBucket = (bucket, accumulators) -> {
+            for (int i = 0; i < buffers.length; i++) {
+                MetricAccumulator accumulator = accumulators[seriesMetrics.get(i).ordinal()];
+                if (accumulator.getCount() > 0) {
+                    buffers[i].add(bucket, seriesStats.get(i).valueOf(accumulator));
+                }
+            }
+        };
+        boolean withSketch = needsSketch(stats);
+        try (ReadSnapshot snapshot = snapshotRegistry.open(fromInclusive, toExclusive)) {
+            if (intervalMillis % RollupIndex.HOUR_MILLIS == 0) {
+                for (long bucket = RollupIndex.floor(fromInclusive, intervalMillis); bucket < toExclusive; bucket += intervalMillis) {
+                    MetricAccumulator[] accumulators = newAccumulators(scanMetrics, withSketch);
+                    aggregate(snapshot, Math.max(bucket, fromInclusive), Math.min(bucket + intervalMillis, toExclusive),
+                            scanMetrics, accumulators);
+                    addBucket.accept(bucket, accumulators);
+                }
+            } else {
+                MetricAccumulator[][] current = { newAccumulators(scanMetrics, withSketch) };
+                long[] currentBucket = { Long.MIN_VALUE };
+                snapshot.scan(fromInclusive, toExclusive, (timestamp, entryMetrics) -> {
+                    long bucket = RollupIndex.floor(timestamp, intervalMillis);
+                    if (bucket != currentBucket[0]) {
+                        addBucket.accept(currentBucket[0], current[0]);
+                        current[0] = newAccumulators(scanMetrics, withSketch);
+                        currentBucket[0] = bucket;
+                    }
+                    for (MetricType metricType : scanMetrics) {
+                        current[0][metricType.ordinal()].accept(metricType.valueOf(entryMetrics));
+                    }
+                });
+                addBucket.accept(currentBucket[0], current[0]);
+            }
+        }
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i].addPointsTo(series.get(i), maxPoints);
+        }
+        return series;
+    }
+
+    /**
+     * Stored values of each metric in time order, missing readings are left out
+     */
+    @Override
+    public ArrayList<Series> getRawSeries(List<String> metrics, long fromInclusive, long toExclusive, int maxPoints) {
+        MetricType[] scanMetrics = resolveMetrics(metrics);
+        SeriesBuffer[] buffers = new SeriesBuffer[scanMetrics.length];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = new SeriesBuffer();
+        }
+        try (ReadSnapshot snapshot = snapshotRegistry.open(fromInclusive, toExclusive)) {
+            snapshot.scan(fromInclusive, toExclusive, (timestamp, entryMetrics) -> {
+                for (int i = 0; i < scanMetrics.length; i++) {
+                    float value = scanMetrics[i].valueOf(entryMetrics);
+                    if (value != 0.0f) {
+                        buffers[i].add(timestamp, value);
+                    }
+                }
+            });
+        }
+
+        ArrayList<Series> series = new ArrayList<>();
+        for (int i = 0; i < scanMetrics.length; i++) {
+            Series one = new Series(scanMetrics[i].getMetricName(), null);
+            buffers[i].addPointsTo(one, maxPoints);
+            series.add(one);
+        }
+        return series;
+    }
+
+    /**
+     * Accumulates a range as of the snapshot. Ranges longer than the threshold of the stats pool are split
+     * into time partitions which are aggregated in parallel and merged, shorter ones on the calling thread.
+     */
+    private void aggregate(ReadSnapshot snapshot, long fromInclusive, long toExclusive,
+                           MetricType[] metrics, MetricAccumulator[] accumulators) {
+        if (toExclusive - fromInclusive <= statsForkJoinPool.getThresholdMillis()) {
+            aggregateSequentially(snapshot, fromInclusive, toExclusive, metrics, accumulators);
+            return;
+        }
+        MetricAccumulator[] partial = statsForkJoinPool.invoke(
+                new RangeTask(snapshot, fromInclusive, toExclusive, metrics, accumulators));
+        for (MetricType metricType : metrics) {
+            accumulators[metricType.ordinal()].merge(partial[metricType.ordinal()]);
+        }
+    }
+
+    /**
+     * Whole hours come from the rollup tiers, raw rows are only read for the ragged edges
+     */
+    private void aggregateSequentially(ReadSnapshot snapshot, long fromInclusive, long toExclusive,
+                                       MetricType[] metrics, MetricAccumulator[] accumulators) {
+        long alignedFrom = RollupIndex.ceil(fromInclusive, RollupIndex.HOUR_MILLIS);
+        long alignedTo = RollupIndex.floor(toExclusive, RollupIndex.HOUR_MILLIS);
+        if (alignedFrom < alignedTo) {
+            snapshot.aggregate(fromInclusive, alignedFrom, metrics, accumulators);
+            aggregateRollups(snapshot, alignedFrom, alignedTo, metrics, accumulators);
+            snapshot.aggregate(alignedTo, toExclusive, metrics, accumulators);
+        } else {
+            snapshot.aggregate(fromInclusive, toExclusive, metrics, accumulators);
+        }
+    }
+
+    /**
+     * Distinct known metrics in request order
+     */
+    private static MetricType[] resolveMetrics(List<String> metrics) {
+        ArrayList<MetricType> requestedMetrics = new ArrayList<>();
+        for (String metric : metrics) {
+            MetricType metricType = MetricType.fromName(metric);
+            if (metricType != null && !requestedMetrics.contains(metricType)) {
+                requestedMetrics.add(metricType);
+            }
+        }
+        return requestedMetrics.toArray(new MetricType[0]);
+    }
+
+    /**
+     * Percentiles merge the sketches of the rollups, other stats leave them out
+     */
+    private static boolean needsSketch(List<String> stats) {
+        for (String stat : stats) {
+            StatType statType = StatType.fromName(stat);
+            if (statType != null && statType.needsSketch()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static MetricAccumulator[] newAccumulators(MetricType[] metrics, boolean withSketch) {
+        MetricAccumulator[] accumulators = new MetricAccumulator[MetricType.values().length];
+        for (MetricType metricType : metrics) {
+            accumulators[metricType.ordinal()] = new MetricAccumulator(withSketch);
+        }
+        return accumulators;
+    }
+
+    /**
+     * Reads the requested stats off the accumulators in request order, accumulators are indexed by MetricType ordinal
+     */
+    static ArrayList<StatsResponse> toResponses(List<String> metrics, List<String> stats, MetricAccumulator[] accumulators) {
+        ArrayList<StatsResponse> statsResponseList = new ArrayList<>();
+        for (String metric : metrics) {
+            MetricType metricType = MetricType.fromName(metric);
+            if (metricType == null) {
+                continue;
+            }
+            for (String stat : stats) {
+                StatType statType = StatType.fromName(stat);
+                if (statType == null) {
+                    continue;
+                }
+                MetricAccumulator accumulator = accumulators[metricType.ordinal()];
+                // stats without any reading in the range are left out of the response, a stat of 0 over
+                // readings (stddev of a constant series, a sum which cancels out) is a value like any other
+                if (accumulator.getCount() > 0) {
+                    StatsResponse statsResponse = new StatsResponse(metric, stat, statType.valueOf(accumulator));
+                    if (statType == StatType.HISTOGRAM) {
+                        statsResponse.setHistogram(accumulator.getHistogram(StatType.HISTOGRAM_BINS));
+                    }
+                    statsResponseList.add(statsResponse);
+                }
+            }
+        }
+        return statsResponseList;
+    }
+
+    /**
+     * Merges the rollups of an hour aligned range as of the snapshot. Rollups only hold the live state, so hours
+     * written since the snapshot are read row by row from the snapshot instead. The changed hours are checked after
+     * the rollups were read and the rollups are read again if more hours changed in the meantime.
+     */
+    private void aggregateRollups(ReadSnapshot snapshot, long fromInclusive, long toExclusive,
+                                  MetricType[] metrics, MetricAccumulator[] accumulators) {
+        TreeSet<Long> changedHours = snapshot.changedHours(fromInclusive, toExclusive);
+        while (true) {
+            MetricAccumulator[] rolledUp = new MetricAccumulator[accumulators.length];
+            for (MetricType metricType : metrics) {
+                rolledUp[metricType.ordinal()] = new MetricAccumulator(accumulators[metricType.ordinal()].hasSketch());
+            }
+            long runStart = fromInclusive;
+            for (long hour : changedHours) {
+                rollupIndex.aggregate(runStart, hour, rolledUp);
+                runStart = hour + RollupIndex.HOUR_MILLIS;
+            }
+            rollupIndex.aggregate(runStart, toExclusive, rolledUp);
+
+            TreeSet<Long> nowChanged = snapshot.changedHours(fromInclusive, toExclusive);
+            if (nowChanged.equals(changedHours)) {
+                for (MetricType metricType : metrics) {
+                    accumulators[metricType.ordinal()].merge(rolledUp[metricType.ordinal()]);
+                }
+                for (long hour : changedHours) {
+                    snapshot.accumulate(hour, hour + RollupIndex.HOUR_MILLIS, metrics, accumulators);
+                }
+                return;
+            }
+            changedHours = nowChanged;
+        }
+    }
+
+    /**
+     * Halves a range at a day boundary until the parts are no longer than the threshold, the left half is forked
+     * and the right half computed in place. Every part accumulates into its own accumulators which are merged on join.
+     */
+    private final class RangeTask extends RecursiveTask<MetricAccumulator[]> {
+
+        private final ReadSnapshot snapshot;
+        private final long fromInclusive;
+        private final long toExclusive;
+        private final MetricType[] metrics;
+        private final MetricAccumulator[] layout;
+
+        private RangeTask(ReadSnapshot snapshot, long fromInclusive, long toExclusive,
+                          MetricType[] metrics, MetricAccumulator[] layout) {
+            this.snapshot = snapshot;
+            this.fromInclusive = fromInclusive;
+            this.toExclusive = toExclusive;
+            this.metrics = metrics;
+            this.layout = layout;
+        }
+
+        @Override
+        protected MetricAccumulator[] compute() {
+            long middle = RollupIndex.floor(fromInclusive + (toExclusive - fromInclusive) / 2, RollupIndex.DAY_MILLIS);
+            if (toExclusive - fromInclusive <= statsForkJoinPool.getThresholdMillis() || middle <= fromInclusive) {
+                MetricAccumulator[] accumulators = new MetricAccumulator[layout.length];
+                for (MetricType metricType : metrics) {
+                    accumulators[metricType.ordinal()] = new MetricAccumulator(layout[metricType.ordinal()].hasSketch());
+                }
+                aggregateSequentially(snapshot, fromInclusive, toExclusive, metrics, accumulators);
+                return accumulators;
+            }
+            RangeTask left = new RangeTask(snapshot, fromInclusive, middle, metrics, layout);
+            left.fork();
+            MetricAccumulator[] accumulators = new RangeTask(snapshot, middle, toExclusive, metrics, layout).compute();
+            MetricAccumulator[] leftAccumulators = left.join();
+            for (MetricType metricType : metrics) {
+                accumulators[metricType.ordinal()].merge(leftAccumulators[metricType.ordinal()]);
+            }
+            return accumulators;
+        }
+    }
+
+    private interface BucketConsumer {
+        void accept(long bucket, MetricAccumulator[] accumulators);
+    }
+
+    /**
+     * Growable time ordered points of one series, downsampled when they are turned into the response
+     */
+    private static final class SeriesBuffer {
+
+        private long[] timestamps = new long[64];
+        private float[] values = new float[64];
+        private int length;
+
+        void add(long timestamp, float value) {
+            if (length == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, length * 2);
+                values = Arrays.copyOf(values, length * 2);
+            }
+            timestamps[length] = timestamp;
+            values[length++] = value;
+        }
+
+        void addPointsTo(Series series, int maxPoints) {
+            int[] kept = LargestTriangleThreeBuckets.downsample(timestamps, values, length, maxPoints);
+            for (int index : kept) {
+                series.getPoints().add(new SeriesPoint(WeatherTrackerUtil.convertEpochMillisToString(timestamps[index]), values[index]));
+            }
+        }
+    }
+}
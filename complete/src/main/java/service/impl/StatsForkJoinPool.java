@@ -0,0 +1,49 @@
+package service.impl;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dedicated fork-join pool for splitting long stats ranges into time partitions which are aggregated in parallel.
+ * Ranges up to the threshold are aggregated on the calling thread, the common pool is never used so stats
+ * queries do not compete with other users of it.
+ */
+@Component
+public class StatsForkJoinPool {
+
+    private final ForkJoinPool pool;
+    private final long thresholdMillis;
+
+    public StatsForkJoinPool(@Value("${measurement.stats.parallelism:0}") int parallelism,
+                             @Value("${measurement.stats.parallel-threshold-days:7}") long thresholdDays) {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        this.pool = new ForkJoinPool(threads, forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("stats-aggregation-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+        this.thresholdMillis = TimeUnit.DAYS.toMillis(thresholdDays);
+    }
+
+    /**
+     * Longest range which is aggregated sequentially, longer ranges are split until their parts are no longer than this
+     */
+    public long getThresholdMillis() {
+        return thresholdMillis;
+    }
+
+    public <T> T invoke(ForkJoinTask<T> task) {
+        return pool.invoke(task);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
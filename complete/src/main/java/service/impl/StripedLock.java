@@ -0,0 +1,108 @@
+package service.impl;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed set of locks shared by timestamp, writes to the same timestamp always take the same lock so they are applied
+ * and logged in the same order, while writes to other timestamps mostly go through other stripes.
+ * Every stripe also publishes a sequence which is odd while the stripe is held, so readers can wait for the writes
+ * in progress to finish without taking any lock.
+ */
+@Component
+class StripedLock {
+
+    private static final int DEFAULT_STRIPES = 256;
+    private static final int SEQUENCE_STRIDE = 16; // longs between two sequences, keeps stripes off shared cache lines
+    private static final int SPINS_BEFORE_YIELD = 128;
+
+    private final ReentrantLock[] stripes;
+    private final AtomicLongArray sequences;
+
+    StripedLock() {
+        this(DEFAULT_STRIPES);
+    }
+
+    StripedLock(int stripeCount) {
+        stripes = new ReentrantLock[Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        sequences = new AtomicLongArray(stripes.length * SEQUENCE_STRIDE);
+    }
+
+    void lock(long key) {
+        acquire(stripe(key));
+    }
+
+    void unlock(long key) {
+        release(stripe(key));
+    }
+
+    /**
+     * Locks the stripes of the first count keys in ascending stripe order so batches cannot deadlock each other,
+     * returns the locked stripes for unlockAll
+     */
+    int[] lockAll(long[] keys, int count) {
+        int[] locked = new int[count];
+        for (int i = 0; i < count; i++) {
+            locked[i] = stripe(keys[i]);
+        }
+        Arrays.sort(locked);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || locked[distinct - 1] != locked[i]) {
+                locked[distinct++] = locked[i];
+            }
+        }
+        locked = Arrays.copyOf(locked, distinct);
+        for (int stripe : locked) {
+            acquire(stripe);
+        }
+        return locked;
+    }
+
+    void unlockAll(int[] locked) {
+        for (int i = locked.length - 1; i >= 0; i--) {
+            release(locked[i]);
+        }
+    }
+
+    /**
+     * Waits until every stripe held when this is called has been released once. No stripe is taken, so writes
+     * which start in the meantime are not held off and are not waited for.
+     */
+    void awaitReleased() {
+        for (int stripe = 0; stripe < stripes.length; stripe++) {
+            long sequence = sequences.get(stripe * SEQUENCE_STRIDE);
+            if ((sequence & 1) == 0) {
+                continue;
+            }
+            for (int spins = 0; sequences.get(stripe * SEQUENCE_STRIDE) == sequence; spins++) {
+                if (spins < SPINS_BEFORE_YIELD) {
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+            }
+        }
+    }
+
+    private void acquire(int stripe) {
+        stripes[stripe].lock();
+        sequences.incrementAndGet(stripe * SEQUENCE_STRIDE);
+    }
+
+    private void release(int stripe) {
+        sequences.incrementAndGet(stripe * SEQUENCE_STRIDE);
+        stripes[stripe].unlock();
+    }
+
+    private int stripe(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 40) & (stripes.length - 1);
+    }
+}
@@ -0,0 +1,68 @@
+package store;
+
+import model.MetricType;
+
+/**
+ * Reusable fixed capacity batch of measurements in column form, used to move streamed rows into the store
+ * without allocating an object per row. A metric value of 0.0 marks a missing reading, as in Metrics.
+ */
+public class MeasurementBatch {
+
+    private final long[] timestamps;
+    private final float[][] values;
+    private final boolean[] replaced;
+    private int size;
+
+    public MeasurementBatch(int capacity) {
+        this.timestamps = new long[capacity];
+        this.values = new float[MetricType.values().length][capacity];
+        this.replaced = new boolean[capacity];
+    }
+
+    public void add(long timestamp, float temperature, float dewPoint, float precipitation) {
+        timestamps[size] = timestamp;
+        values[MetricType.TEMPERATURE.ordinal()][size] = temperature;
+        values[MetricType.DEW_POINT.ordinal()][size] = dewPoint;
+        values[MetricType.PRECIPITATION.ordinal()][size] = precipitation;
+        replaced[size] = false;
+        size++;
+    }
+
+    public boolean isFull() {
+        return size == timestamps.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public long getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    /**
+     * Timestamps of the batch, only the first size() entries are valid
+     */
+    public long[] getTimestamps() {
+        return timestamps;
+    }
+
+    public float getValue(MetricType metricType, int index) {
+        return values[metricType.ordinal()][index];
+    }
+
+    /**
+     * Set by the store when the row replaced an existing measurement
+     */
+    public void setReplaced(int index, boolean replaced) {
+        this.replaced[index] = replaced;
+    }
+
+    public boolean isReplaced(int index) {
+        return replaced[index];
+    }
+}
@@ -0,0 +1,35 @@
+package store;
+
+import model.Metrics;
+
+/**
+ * Durability layer of the measurement store. Every applied write is appended to the log as the value it left
+ * behind, so replaying the log over a snapshot in order restores the store.
+ * Appends return a sequence number which can be passed to awaitDurable to wait for the configured sync policy.
+ */
+public interface MeasurementLog {
+
+    /**
+     * Receives the content of the snapshot and the log records during recovery
+     */
+    interface ReplayHandler {
+        void put(long timestamp, Metrics metrics);
+        void remove(long timestamp);
+    }
+
+    long logPut(long timestamp, Metrics metrics);
+
+    long logRemove(long timestamp);
+
+    long logBatch(MeasurementBatch batch);
+
+    /**
+     * Blocks until the record with the given sequence is as durable as the sync policy promises
+     */
+    void awaitDurable(long sequence);
+
+    /**
+     * Loads the latest snapshot and replays the log written after it, called once at startup before any write
+     */
+    void recover(ReplayHandler handler);
+}
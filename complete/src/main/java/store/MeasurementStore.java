@@ -0,0 +1,87 @@
+package store;
+
+import model.MetricAccumulator;
+import model.MetricType;
+import model.Metrics;
+
+/**
+ * Storage abstraction behind the measurement service.
+ * Measurements are keyed by their timestamp in epoch milliseconds (UTC) and kept in time order,
+ * implementations must be safe for concurrent use by all request threads.
+ */
+public interface MeasurementStore {
+
+    /**
+     * Callback used by range scans, rows are visited in ascending timestamp order
+     */
+    interface MeasurementVisitor {
+        void visit(long timestamp, Metrics metrics);
+    }
+
+    /**
+     * Stores the metrics for a timestamp, replacing and returning any existing entry
+     */
+    Metrics put(long timestamp, Metrics metrics);
+
+    /**
+     * Stores a batch of measurements in array order, as if put was called for each of them.
+     * The metrics each put replaced are written to previous (null where there was none).
+     */
+    default void putAll(long[] timestamps, Metrics[] metrics, Metrics[] previous) {
+        for (int i = 0; i < timestamps.length; i++) {
+            previous[i] = put(timestamps[i], metrics[i]);
+        }
+    }
+
+    /**
+     * Stores every row of a batch in row order, as if put was called for each of them,
+     * and flags the rows which replaced an existing measurement
+     */
+    default void putBatch(MeasurementBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            Metrics metrics = new Metrics(
+                    batch.getValue(MetricType.TEMPERATURE, i),
+                    batch.getValue(MetricType.DEW_POINT, i),
+                    batch.getValue(MetricType.PRECIPITATION, i));
+            batch.setReplaced(i, put(batch.getTimestamp(i), metrics) != null);
+        }
+    }
+
+    /**
+     * Returns the metrics stored for a timestamp or null if there is none
+     */
+    Metrics get(long timestamp);
+
+    /**
+     * Replaces the metrics of an existing timestamp and returns the previous metrics,
+     * returns null and stores nothing if the timestamp is not stored
+     */
+    Metrics replace(long timestamp, Metrics metrics);
+
+    /**
+     * Removes a timestamp and returns the metrics it held or null if there was none
+     */
+    Metrics remove(long timestamp);
+
+    /**
+     * Visits every measurement with fromInclusive <= timestamp < toExclusive in ascending order
+     */
+    void scan(long fromInclusive, long toExclusive, MeasurementVisitor visitor);
+
+    /**
+     * Accepts the given metrics of every measurement with fromInclusive <= timestamp < toExclusive into the
+     * accumulators, which are indexed by MetricType ordinal. Stores may answer this without materializing rows.
+     */
+    default void aggregate(long fromInclusive, long toExclusive, MetricType[] metrics, MetricAccumulator[] accumulators) {
+        scan(fromInclusive, toExclusive, (timestamp, entryMetrics) -> {
+            for (MetricType metricType : metrics) {
+                accumulators[metricType.ordinal()].accept(metricType.valueOf(entryMetrics));
+            }
+        });
+    }
+
+    /**
+     * Number of measurements currently stored
+     */
+    int size();
+}
@@ -0,0 +1,662 @@
+package store.impl;
+
+import model.MetricAccumulator;
+import model.MetricType;
+import model.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import store.MeasurementBatch;
+import store.MeasurementStore;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Columnar measurement store, enabled with measurement.store=columnar.
+ * Samples are kept in hourly chunks holding a sorted long[] of timestamps, one float[] per metric and one
+ * validity bitmap per metric, which is about 20 bytes of heap per sample instead of a map entry plus a Metrics object.
+ * A metric value of 0.0 in a Metrics object is the API's marker for a missing reading; it is stored as a cleared
+ * validity bit and handed back as 0.0. Aggregations run over the chunk and segment columns with ScanKernels.
+ *
+ * With measurement.columnar.sealing.enabled=true, days older than the hot window which were not written since the
+ * previous sealing run are moved off the heap into immutable memory-mapped SealedSegment files. Reads use the segment
+ * header to skip partitions which cannot match, a write to a sealed day first loads it back into hourly chunks.
+ * Segment files are a cache of the in-memory state; durability is the job of the measurement log, so leftover files
+ * are deleted on startup.
+ */
+@Component
+@ConditionalOnProperty(name = "measurement.store", havingValue = "columnar")
+public class ColumnarMeasurementStore implements MeasurementStore {
+
+    private static final Logger log = LoggerFactory.getLogger(ColumnarMeasurementStore.class);
+
+    static final long CHUNK_MILLIS = RollupIndex.HOUR_MILLIS;
+    static final long PARTITION_MILLIS = RollupIndex.DAY_MILLIS;
+
+    private static final int INITIAL_CHUNK_CAPACITY = 64;
+    private static final MetricType[] METRIC_TYPES = MetricType.values();
+
+    @Value("${measurement.columnar.sealing.enabled:false}")
+    private boolean sealingEnabled;
+
+    @Value("${measurement.columnar.sealing.directory:segments}")
+    private String segmentDirectory;
+
+    @Value("${measurement.columnar.sealing.hot-days:1}")
+    private int hotDays;
+
+    @Value("${measurement.columnar.sealing.interval-seconds:60}")
+    private long sealingIntervalSeconds;
+
+    private final ConcurrentSkipListMap<Long, Partition> partitions = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<Long, Chunk> chunks = new ConcurrentSkipListMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private ScheduledExecutorService sealingScheduler;
+
+    @PostConstruct
+    public void startSealing() throws IOException {
+        if (!sealingEnabled) {
+            return;
+        }
+        Path directory = Paths.get(segmentDirectory);
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(directory, "segment-*.seg")) {
+            for (Path leftover : leftovers) {
+                Files.delete(leftover);
+            }
+        }
+        sealingScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "measurement-sealing");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sealingScheduler.scheduleWithFixedDelay(() -> sealColdPartitions(System.currentTimeMillis()),
+                sealingIntervalSeconds, sealingIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stopSealing() {
+        if (sealingScheduler != null) {
+            sealingScheduler.shutdownNow();
+        }
+    }
+
+    @Override
+    public Metrics put(long timestamp, Metrics metrics) {
+        Partition partition = lockForWrite(timestamp);
+        try {
+            while (true) {
+                long chunkStart = RollupIndex.floor(timestamp, CHUNK_MILLIS);
+                Chunk chunk = chunks.computeIfAbsent(chunkStart, key -> new Chunk());
+                chunk.lock.writeLock().lock();
+                try {
+                    if (chunk.retired) {
+                        continue;
+                    }
+                    int index = chunk.indexOf(timestamp);
+                    if (index >= 0) {
+                        Metrics previous = chunk.materialize(index);
+                        chunk.set(index, metrics);
+                        return previous;
+                    }
+                    chunk.insert(-index - 1, timestamp, metrics);
+                    size.incrementAndGet();
+                    return null;
+                } finally {
+                    chunk.lock.writeLock().unlock();
+                }
+            }
+        } finally {
+            partition.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Consecutive samples which fall into the same chunk are stored under one lock acquisition,
+     * so time ordered batches take each chunk lock once
+     */
+    @Override
+    public void putAll(long[] timestamps, Metrics[] metrics, Metrics[] previous) {
+        int runStart = 0;
+        while (runStart < timestamps.length) {
+            long chunkStart = RollupIndex.floor(timestamps[runStart], CHUNK_MILLIS);
+            int runEnd = runStart + 1;
+            while (runEnd < timestamps.length && RollupIndex.floor(timestamps[runEnd], CHUNK_MILLIS) == chunkStart) {
+                runEnd++;
+            }
+            Partition partition = lockForWrite(chunkStart);
+            try {
+                Chunk chunk = chunks.computeIfAbsent(chunkStart, key -> new Chunk());
+                chunk.lock.writeLock().lock();
+                try {
+                    if (chunk.retired) {
+                        continue;
+                    }
+                    for (int i = runStart; i < runEnd; i++) {
+                        int index = chunk.indexOf(timestamps[i]);
+                        if (index >= 0) {
+                            previous[i] = chunk.materialize(index);
+                            chunk.set(index, metrics[i]);
+                        } else {
+                            previous[i] = null;
+                            chunk.insert(-index - 1, timestamps[i], metrics[i]);
+                            size.incrementAndGet();
+                        }
+                    }
+                    runStart = runEnd;
+                } finally {
+                    chunk.lock.writeLock().unlock();
+                }
+            } finally {
+                partition.lock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Batch rows are copied straight into the columns, no Metrics object is created per row
+     */
+    @Override
+    public void putBatch(MeasurementBatch batch) {
+        long[] timestamps = batch.getTimestamps();
+        int runStart = 0;
+        while (runStart < batch.size()) {
+            long chunkStart = RollupIndex.floor(timestamps[runStart], CHUNK_MILLIS);
+            int runEnd = runStart + 1;
+            while (runEnd < batch.size() && RollupIndex.floor(timestamps[runEnd], CHUNK_MILLIS) == chunkStart) {
+                runEnd++;
+            }
+            Partition partition = lockForWrite(chunkStart);
+            try {
+                Chunk chunk = chunks.computeIfAbsent(chunkStart, key -> new Chunk());
+                chunk.lock.writeLock().lock();
+                try {
+                    if (chunk.retired) {
+                        continue;
+                    }
+                    for (int i = runStart; i < runEnd; i++) {
+                        int index = chunk.indexOf(timestamps[i]);
+                        batch.setReplaced(i, index >= 0);
+                        if (index < 0) {
+                            index = -index - 1;
+                            chunk.insert(index, timestamps[i]);
+                            size.incrementAndGet();
+                        }
+                        for (MetricType metricType : METRIC_TYPES) {
+                            chunk.set(metricType.ordinal(), index, batch.getValue(metricType, i));
+                        }
+                    }
+                    runStart = runEnd;
+                } finally {
+                    chunk.lock.writeLock().unlock();
+                }
+            } finally {
+                partition.lock.readLock().unlock();
+            }
+        }
+    }
+
+    @Override
+    public Metrics get(long timestamp) {
+        Partition partition = partitions.get(RollupIndex.floor(timestamp, PARTITION_MILLIS));
+        if (partition == null) {
+            return null;
+        }
+        partition.lock.readLock().lock();
+        try {
+            SealedSegment sealed = partition.sealed;
+            if (sealed != null) {
+                int index = sealed.isOutside(timestamp, timestamp + 1) ? -1 : sealed.indexOf(timestamp);
+                return index >= 0 ? sealed.materialize(index) : null;
+            }
+            Chunk chunk = chunks.get(RollupIndex.floor(timestamp, CHUNK_MILLIS));
+            if (chunk == null) {
+                return null;
+            }
+            chunk.lock.readLock().lock();
+            try {
+                int index = chunk.indexOf(timestamp);
+                return index >= 0 ? chunk.materialize(index) : null;
+            } finally {
+                chunk.lock.readLock().unlock();
+            }
+        } finally {
+            partition.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Metrics replace(long timestamp, Metrics metrics) {
+        if (get(timestamp) == null) {
+            return null; // keeps a miss from loading a sealed partition back onto the heap
+        }
+        Partition partition = lockForWrite(timestamp);
+        try {
+            Chunk chunk = chunks.get(RollupIndex.floor(timestamp, CHUNK_MILLIS));
+            if (chunk == null) {
+                return null;
+            }
+            chunk.lock.writeLock().lock();
+            try {
+                int index = chunk.indexOf(timestamp);
+                if (chunk.retired || index < 0) {
+                    return null;
+                }
+                Metrics previous = chunk.materialize(index);
+                chunk.set(index, metrics);
+                return previous;
+            } finally {
+                chunk.lock.writeLock().unlock();
+            }
+        } finally {
+            partition.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Metrics remove(long timestamp) {
+        if (get(timestamp) == null) {
+            return null;
+        }
+        Partition partition = lockForWrite(timestamp);
+        try {
+            long chunkStart = RollupIndex.floor(timestamp, CHUNK_MILLIS);
+            Chunk chunk = chunks.get(chunkStart);
+            if (chunk == null) {
+                return null;
+            }
+            chunk.lock.writeLock().lock();
+            try {
+                int index = chunk.indexOf(timestamp);
+                if (chunk.retired || index < 0) {
+                    return null;
+                }
+                Metrics removed = chunk.materialize(index);
+                chunk.delete(index);
+                size.decrementAndGet();
+                if (chunk.size == 0) {
+                    chunk.retired = true;
+                    chunks.remove(chunkStart, chunk);
+                }
+                return removed;
+            } finally {
+                chunk.lock.writeLock().unlock();
+            }
+        } finally {
+            partition.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void scan(long fromInclusive, long toExclusive, MeasurementVisitor visitor) {
+        if (fromInclusive >= toExclusive) {
+            return;
+        }
+        long firstPartition = RollupIndex.floor(fromInclusive, PARTITION_MILLIS);
+        for (Map.Entry<Long, Partition> entry : partitions.subMap(firstPartition, true, toExclusive, false).entrySet()) {
+            long partitionStart = entry.getKey();
+            Partition partition = entry.getValue();
+            SealedSegment sealed;
+            partition.lock.readLock().lock();
+            try {
+                sealed = partition.sealed;
+                if (sealed == null) {
+                    scanChunks(Math.max(fromInclusive, partitionStart),
+                            Math.min(toExclusive, partitionStart + PARTITION_MILLIS), visitor);
+                    continue;
+                }
+            } finally {
+                partition.lock.readLock().unlock();
+            }
+            // sealed rows are immutable, so they are read from the mapping without holding the partition lock
+            if (!sealed.isOutside(fromInclusive, toExclusive)) {
+                for (int i = sealed.lowerBound(fromInclusive); i < sealed.size() && sealed.timestamp(i) < toExclusive; i++) {
+                    visitor.visit(sealed.timestamp(i), sealed.materialize(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Accumulates values straight from the columns. Sealed partitions are skipped when their header rules them out
+     * and are answered from the header alone when the range covers them completely.
+     */
+    @Override
+    public void aggregate(long fromInclusive, long toExclusive, MetricType[] metrics, MetricAccumulator[] accumulators) {
+        if (fromInclusive >= toExclusive) {
+            return;
+        }
+        long firstPartition = RollupIndex.floor(fromInclusive, PARTITION_MILLIS);
+        for (Map.Entry<Long, Partition> entry : partitions.subMap(firstPartition, true, toExclusive, false).entrySet()) {
+            long partitionStart = entry.getKey();
+            Partition partition = entry.getValue();
+            SealedSegment sealed;
+            partition.lock.readLock().lock();
+            try {
+                sealed = partition.sealed;
+                if (sealed == null) {
+                    aggregateChunks(Math.max(fromInclusive, partitionStart),
+                            Math.min(toExclusive, partitionStart + PARTITION_MILLIS), metrics, accumulators);
+                    continue;
+                }
+            } finally {
+                partition.lock.readLock().unlock();
+            }
+            aggregateSealed(sealed, fromInclusive, toExclusive, metrics, accumulators);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Seals every day that is older than the hot window and was not written since the previous run
+     */
+    public void sealColdPartitions(long now) {
+        long hotStart = RollupIndex.floor(now, PARTITION_MILLIS) - (hotDays - 1) * PARTITION_MILLIS;
+        for (Map.Entry<Long, Partition> entry : partitions.headMap(hotStart, false).entrySet()) {
+            Partition partition = entry.getValue();
+            if (partition.written) {
+                // recently written days are likely backfilled further, they are sealed once they go quiet
+                partition.written = false;
+                continue;
+            }
+            try {
+                seal(entry.getKey(), partition);
+            } catch (IOException e) {
+                // the partition simply stays on the heap until the next run
+                log.warn("Sealing partition {} failed", entry.getKey(), e);
+            }
+        }
+    }
+
+    private void seal(long partitionStart, Partition partition) throws IOException {
+        partition.lock.writeLock().lock();
+        try {
+            Map<Long, Chunk> partitionChunks = chunks.subMap(partitionStart, partitionStart + PARTITION_MILLIS);
+            if (partition.sealed != null || partitionChunks.isEmpty()) {
+                return;
+            }
+            int count = 0;
+            for (Chunk chunk : partitionChunks.values()) {
+                count += chunk.size;
+            }
+            long[] timestamps = new long[count];
+            float[][] values = new float[METRIC_TYPES.length][count];
+            int row = 0;
+            for (Chunk chunk : partitionChunks.values()) {
+                System.arraycopy(chunk.timestamps, 0, timestamps, row, chunk.size);
+                for (MetricType metricType : METRIC_TYPES) {
+                    for (int i = 0; i < chunk.size; i++) {
+                        values[metricType.ordinal()][row + i] = chunk.value(metricType, i);
+                    }
+                }
+                row += chunk.size;
+            }
+            partition.sealed = SealedSegment.write(
+                    Paths.get(segmentDirectory, "segment-" + partitionStart + ".seg"), timestamps, values, count);
+            for (Chunk chunk : partitionChunks.values()) {
+                chunk.retired = true;
+            }
+            partitionChunks.clear();
+        } finally {
+            partition.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Loads a sealed partition back into hourly chunks so it can be written again
+     */
+    private void unseal(Partition partition) {
+        partition.lock.writeLock().lock();
+        try {
+            SealedSegment sealed = partition.sealed;
+            if (sealed == null) {
+                return;
+            }
+            for (int i = 0; i < sealed.size(); i++) {
+                long timestamp = sealed.timestamp(i);
+                Chunk chunk = chunks.computeIfAbsent(RollupIndex.floor(timestamp, CHUNK_MILLIS), key -> new Chunk());
+                chunk.insert(chunk.size, timestamp, sealed.materialize(i));
+            }
+            partition.sealed = null;
+            try {
+                sealed.delete();
+            } catch (IOException e) {
+                // the file is deleted on the next startup
+            }
+        } finally {
+            partition.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the partition of a timestamp with its read lock held and its rows on the heap,
+     * the caller writes to the chunks of the partition and then releases the read lock
+     */
+    private Partition lockForWrite(long timestamp) {
+        Partition partition = partitions.computeIfAbsent(RollupIndex.floor(timestamp, PARTITION_MILLIS), key -> new Partition());
+        while (true) {
+            partition.lock.readLock().lock();
+            if (partition.sealed == null) {
+                if (!partition.written) {
+                    partition.written = true;
+                }
+                return partition;
+            }
+            partition.lock.readLock().unlock();
+            unseal(partition);
+        }
+    }
+
+    private void scanChunks(long fromInclusive, long toExclusive, MeasurementVisitor visitor) {
+        if (fromInclusive >= toExclusive) {
+            return;
+        }
+        long firstChunk = RollupIndex.floor(fromInclusive, CHUNK_MILLIS);
+        for (Chunk chunk : chunks.subMap(firstChunk, true, toExclusive, false).values()) {
+            long[] timestamps;
+            Metrics[] rows;
+            // rows are copied out under the read lock so the visitor never runs while a chunk is locked
+            chunk.lock.readLock().lock();
+            try {
+                int from = chunk.lowerBound(fromInclusive);
+                int to = chunk.lowerBound(toExclusive);
+                timestamps = Arrays.copyOfRange(chunk.timestamps, from, Math.max(from, to));
+                rows = new Metrics[timestamps.length];
+                for (int i = 0; i < rows.length; i++) {
+                    rows[i] = chunk.materialize(from + i);
+                }
+            } finally {
+                chunk.lock.readLock().unlock();
+            }
+            for (int i = 0; i < rows.length; i++) {
+                visitor.visit(timestamps[i], rows[i]);
+            }
+        }
+    }
+
+    private void aggregateChunks(long fromInclusive, long toExclusive, MetricType[] metrics, MetricAccumulator[] accumulators) {
+        if (fromInclusive >= toExclusive) {
+            return;
+        }
+        long firstChunk = RollupIndex.floor(fromInclusive, CHUNK_MILLIS);
+        for (Chunk chunk : chunks.subMap(firstChunk, true, toExclusive, false).values()) {
+            chunk.lock.readLock().lock();
+            try {
+                int from = chunk.lowerBound(fromInclusive);
+                int to = chunk.lowerBound(toExclusive);
+                for (MetricType metricType : metrics) {
+                    int column = metricType.ordinal();
+                    ScanKernels.accumulate(chunk.values[column], chunk.validity[column], from, to, accumulators[column]);
+                }
+            } finally {
+                chunk.lock.readLock().unlock();
+            }
+        }
+    }
+
+    private static void aggregateSealed(SealedSegment sealed, long fromInclusive, long toExclusive,
+                                        MetricType[] metrics, MetricAccumulator[] accumulators) {
+        if (sealed.isOutside(fromInclusive, toExclusive)) {
+            return;
+        }
+        boolean covered = fromInclusive <= sealed.getMinTimestamp() && sealed.getMaxTimestamp() < toExclusive;
+        int from = covered ? 0 : sealed.lowerBound(fromInclusive);
+        int to = covered ? sealed.size() : sealed.lowerBound(toExclusive);
+        for (MetricType metricType : metrics) {
+            MetricAccumulator header = sealed.getMetricHeader(metricType);
+            // the header has no sketch, so percentiles still read the column
+            if (covered && !accumulators[metricType.ordinal()].hasSketch()) {
+                accumulators[metricType.ordinal()].merge(header);
+            } else if (header.getCount() > 0) {
+                sealed.accumulate(metricType, from, to, accumulators[metricType.ordinal()]);
+            }
+        }
+    }
+
+    /**
+     * One day of samples, either as hourly chunks on the heap or as a sealed segment.
+     * Readers and writers of the day's chunks hold the read lock, sealing and unsealing hold the write lock.
+     */
+    private static final class Partition {
+
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private volatile SealedSegment sealed;
+        private volatile boolean written;
+    }
+
+    /**
+     * One hour of samples in column layout, all fields are guarded by the chunk lock
+     */
+    private static final class Chunk {
+
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private long[] timestamps = new long[INITIAL_CHUNK_CAPACITY];
+        private final float[][] values = new float[METRIC_TYPES.length][INITIAL_CHUNK_CAPACITY];
+        private final long[][] validity = new long[METRIC_TYPES.length][INITIAL_CHUNK_CAPACITY / 64];
+        private int size;
+        private boolean retired;
+
+        int indexOf(long timestamp) {
+            return Arrays.binarySearch(timestamps, 0, size, timestamp);
+        }
+
+        /**
+         * Index of the first sample whose timestamp is not before the given timestamp
+         */
+        int lowerBound(long timestamp) {
+            int index = indexOf(timestamp);
+            return index >= 0 ? index : -index - 1;
+        }
+
+        Metrics materialize(int index) {
+            return new Metrics(
+                    value(MetricType.TEMPERATURE, index),
+                    value(MetricType.DEW_POINT, index),
+                    value(MetricType.PRECIPITATION, index));
+        }
+
+        void set(int index, Metrics metrics) {
+            for (MetricType metricType : METRIC_TYPES) {
+                set(metricType.ordinal(), index, metricType.valueOf(metrics));
+            }
+        }
+
+        void set(int column, int index, float value) {
+            values[column][index] = value;
+            if (value == 0.0f) {
+                validity[column][index >>> 6] &= ~(1L << index);
+            } else {
+                validity[column][index >>> 6] |= 1L << index;
+            }
+        }
+
+        void insert(int index, long timestamp, Metrics metrics) {
+            insert(index, timestamp);
+            set(index, metrics);
+        }
+
+        /**
+         * Opens a slot for a timestamp, the metric values of the slot are missing until set
+         */
+        void insert(int index, long timestamp) {
+            if (size == timestamps.length) {
+                grow();
+            }
+            System.arraycopy(timestamps, index, timestamps, index + 1, size - index);
+            timestamps[index] = timestamp;
+            for (int column = 0; column < values.length; column++) {
+                System.arraycopy(values[column], index, values[column], index + 1, size - index);
+                insertBit(validity[column], index, size);
+            }
+            size++;
+        }
+
+        void delete(int index) {
+            System.arraycopy(timestamps, index + 1, timestamps, index, size - index - 1);
+            for (int column = 0; column < values.length; column++) {
+                System.arraycopy(values[column], index + 1, values[column], index, size - index - 1);
+                removeBit(validity[column], index, size);
+            }
+            size--;
+        }
+
+        float value(MetricType metricType, int index) {
+            int column = metricType.ordinal();
+            return (validity[column][index >>> 6] & (1L << index)) != 0 ? values[column][index] : 0.0f;
+        }
+
+        private void grow() {
+            int capacity = timestamps.length * 2;
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            for (int column = 0; column < values.length; column++) {
+                values[column] = Arrays.copyOf(values[column], capacity);
+                validity[column] = Arrays.copyOf(validity[column], capacity / 64);
+            }
+        }
+
+        /**
+         * Shifts the bits at index and above one position up and clears the bit at index
+         */
+        private static void insertBit(long[] words, int index, int size) {
+            int word = index >>> 6;
+            for (int i = size >>> 6; i > word; i--) {
+                words[i] = (words[i] << 1) | (words[i - 1] >>> 63);
+            }
+            long lowMask = (1L << index) - 1;
+            words[word] = (words[word] & lowMask) | ((words[word] & ~lowMask) << 1);
+        }
+
+        /**
+         * Shifts the bits above index one position down, dropping the bit at index
+         */
+        private static void removeBit(long[] words, int index, int size) {
+            int word = index >>> 6;
+            long lowMask = (1L << index) - 1;
+            words[word] = (words[word] & lowMask) | ((words[word] >>> 1) & ~lowMask);
+            for (int i = word + 1; i <= (size - 1) >>> 6; i++) {
+                words[i - 1] |= words[i] << 63;
+                words[i] >>>= 1;
+            }
+        }
+    }
+}
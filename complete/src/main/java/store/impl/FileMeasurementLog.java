@@ -0,0 +1,505 @@
+package store.impl;
+
+import model.MetricType;
+import model.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import store.MeasurementBatch;
+import store.MeasurementLog;
+import store.MeasurementStore;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Write-ahead log plus periodic snapshots in measurement.persistence.directory, enabled with
+ * measurement.persistence.enabled=true.
+ *
+ * Appends only copy a fixed size record into an in-memory buffer; a flusher thread writes whole buffers to the
+ * current segment file through a FileChannel, so concurrent writers share one write and one fsync (group commit).
+ * measurement.persistence.fsync-policy decides when records count as durable: always (writers wait for the fsync
+ * covering their record), interval (fsync every fsync-interval-ms) or never (left to the operating system).
+ *
+ * A snapshot rolls the log to a new segment, writes the whole store next to it and then deletes the older segments.
+ * Since every write is applied before it is logged, everything in the older segments is already in the store when the
+ * snapshot scan starts, and records in the new segment are replayed over it on recovery.
+ */
+@Component
+@ConditionalOnProperty(name = "measurement.persistence.enabled", havingValue = "true")
+public class FileMeasurementLog implements MeasurementLog {
+
+    private static final Logger log = LoggerFactory.getLogger(FileMeasurementLog.class);
+
+    enum FsyncPolicy { ALWAYS, INTERVAL, NEVER }
+
+    private static final int SEGMENT_MAGIC = 0x57414c31;
+    private static final int SNAPSHOT_MAGIC = 0x534e5031;
+    private static final int RECORD_SIZE = 25; // type, timestamp, three metrics, crc
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final Pattern SEGMENT_FILE = Pattern.compile("wal-(\\d+)\\.log");
+    private static final Pattern SNAPSHOT_FILE = Pattern.compile("snapshot-(\\d+)\\.bin");
+
+    @Autowired
+    private MeasurementStore measurementStore;
+
+    @Value("${measurement.persistence.directory:data}")
+    private String directory;
+
+    @Value("${measurement.persistence.fsync-policy:interval}")
+    private String fsyncPolicyName;
+
+    @Value("${measurement.persistence.fsync-interval-ms:100}")
+    private long fsyncIntervalMillis;
+
+    @Value("${measurement.persistence.snapshot-interval-minutes:60}")
+    private long snapshotIntervalMinutes;
+
+    private Path directoryPath;
+    private FsyncPolicy fsyncPolicy;
+    private FileChannel channel; // only used by the flusher thread after open
+    private Thread flusher;
+    private ScheduledExecutorService snapshotScheduler;
+
+    // guarded by lock, writers waiting for the flusher and the flusher waiting for work wait on signal;
+    // a lock rather than a monitor so waiting writers on virtual threads do not pin their carrier threads
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition signal = lock.newCondition();
+    private final CRC32 recordChecksum = new CRC32();
+    private ByteBuffer active = ByteBuffer.allocate(BUFFER_SIZE);
+    private ByteBuffer flushing = ByteBuffer.allocate(BUFFER_SIZE);
+    private long segmentNumber;
+    private long appendedSequence;
+    private long durableSequence;
+    private boolean rollRequested;
+    private boolean running = true;
+    private IOException failure;
+
+    @PostConstruct
+    public void open() throws IOException {
+        directoryPath = Paths.get(directory);
+        Files.createDirectories(directoryPath);
+        fsyncPolicy = FsyncPolicy.valueOf(fsyncPolicyName.trim().toUpperCase(Locale.ROOT));
+        long lastNumber = 0;
+        if (!listFiles(SEGMENT_FILE).isEmpty()) {
+            lastNumber = listFiles(SEGMENT_FILE).lastKey();
+        }
+        if (!listFiles(SNAPSHOT_FILE).isEmpty()) {
+            lastNumber = Math.max(lastNumber, listFiles(SNAPSHOT_FILE).lastKey());
+        }
+        segmentNumber = lastNumber + 1;
+        channel = openSegment(segmentNumber);
+        flusher = new Thread(this::flushLoop, "measurement-log-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @PreDestroy
+    public void close() throws IOException, InterruptedException {
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdown();
+            snapshotScheduler.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        lock.lock();
+        try {
+            running = false;
+            signal.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        flusher.join();
+        channel.close();
+    }
+
+    @Override
+    public long logPut(long timestamp, Metrics metrics) {
+        lock.lock();
+        try {
+            return append(PUT, timestamp, metrics.getTemperature(), metrics.getDewPoint(), metrics.getPrecipation());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long logRemove(long timestamp) {
+        lock.lock();
+        try {
+            return append(REMOVE, timestamp, 0.0f, 0.0f, 0.0f);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long logBatch(MeasurementBatch batch) {
+        lock.lock();
+        try {
+            long sequence = appendedSequence;
+            for (int i = 0; i < batch.size(); i++) {
+                sequence = append(PUT, batch.getTimestamp(i),
+                        batch.getValue(MetricType.TEMPERATURE, i),
+                        batch.getValue(MetricType.DEW_POINT, i),
+                        batch.getValue(MetricType.PRECIPITATION, i));
+            }
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void awaitDurable(long sequence) {
+        if (fsyncPolicy != FsyncPolicy.ALWAYS) {
+            return;
+        }
+        lock.lock();
+        try {
+            while (durableSequence < sequence) {
+                checkFailure();
+                waitForSignal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void recover(ReplayHandler handler) {
+        try {
+            TreeMap<Long, Path> snapshots = listFiles(SNAPSHOT_FILE);
+            long firstSegment = 0;
+            if (!snapshots.isEmpty()) {
+                firstSegment = snapshots.lastKey();
+                readSnapshot(snapshots.lastEntry().getValue(), handler);
+            }
+            for (Map.Entry<Long, Path> segment : listFiles(SEGMENT_FILE).entrySet()) {
+                if (segment.getKey() >= firstSegment && segment.getKey() < segmentNumber) {
+                    replaySegment(segment.getValue(), handler);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not recover the measurement store from " + directoryPath, e);
+        }
+        // snapshots only start once the store holds everything the older files describe
+        snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "measurement-log-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotScheduler.scheduleWithFixedDelay(this::snapshotQuietly,
+                snapshotIntervalMinutes, snapshotIntervalMinutes, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Rolls the log and writes a compacted snapshot of the store, older segments and snapshots are deleted afterwards
+     */
+    public void snapshot() throws IOException {
+        long snapshotNumber = roll();
+        Path temporary = directoryPath.resolve("snapshot-" + snapshotNumber + ".tmp");
+        try (FileChannel snapshotChannel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            CheckedOutputStream checked = new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(snapshotChannel), 1 << 16), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(SNAPSHOT_MAGIC);
+            long[] count = new long[1];
+            try {
+                measurementStore.scan(Long.MIN_VALUE, Long.MAX_VALUE, (timestamp, metrics) -> {
+                    try {
+                        out.writeByte(PUT);
+                        out.writeLong(timestamp);
+                        out.writeFloat(metrics.getTemperature());
+                        out.writeFloat(metrics.getDewPoint());
+                        out.writeFloat(metrics.getPrecipation());
+                        count[0]++;
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            out.writeByte(0);
+            out.writeLong(count[0]);
+            out.writeInt((int) checked.getChecksum().getValue());
+            out.flush();
+            snapshotChannel.force(true);
+        }
+        Files.move(temporary, snapshotPath(snapshotNumber),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory();
+
+        for (Map.Entry<Long, Path> segment : listFiles(SEGMENT_FILE).headMap(snapshotNumber).entrySet()) {
+            Files.deleteIfExists(segment.getValue());
+        }
+        for (Map.Entry<Long, Path> snapshot : listFiles(SNAPSHOT_FILE).headMap(snapshotNumber).entrySet()) {
+            Files.deleteIfExists(snapshot.getValue());
+        }
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (IOException | RuntimeException e) {
+            // the log keeps growing until the next snapshot succeeds, nothing is lost
+            log.warn("Measurement snapshot failed", e);
+        }
+    }
+
+    /**
+     * Makes the flusher switch to a new segment after writing everything appended so far, returns the new segment number
+     */
+    private long roll() throws IOException {
+        lock.lock();
+        try {
+            rollRequested = true;
+            signal.signalAll();
+            while (rollRequested) {
+                checkFailure();
+                waitForSignal();
+            }
+            return segmentNumber;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long append(byte type, long timestamp, float temperature, float dewPoint, float precipitation) {
+        checkFailure();
+        while (active.remaining() < RECORD_SIZE) {
+            signal.signalAll();
+            waitForSignal();
+            checkFailure();
+        }
+        int start = active.position();
+        active.put(type).putLong(timestamp).putFloat(temperature).putFloat(dewPoint).putFloat(precipitation);
+        recordChecksum.reset();
+        recordChecksum.update(active.array(), start, RECORD_SIZE - 4);
+        active.putInt((int) recordChecksum.getValue());
+        appendedSequence++;
+        if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+            signal.signalAll();
+        }
+        return appendedSequence;
+    }
+
+    private void flushLoop() {
+        try {
+            while (true) {
+                long sequence;
+                boolean roll;
+                boolean stopping;
+                lock.lock();
+                try {
+                    if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+                        while (running && !rollRequested && active.position() == 0) {
+                            signal.await();
+                        }
+                    } else if (running && !rollRequested) {
+                        signal.await(fsyncIntervalMillis, TimeUnit.MILLISECONDS);
+                    }
+                    ByteBuffer filled = active;
+                    active = flushing;
+                    flushing = filled;
+                    sequence = appendedSequence;
+                    roll = rollRequested;
+                    stopping = !running;
+                    signal.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+
+                boolean wrote = flushing.position() > 0;
+                flushing.flip();
+                while (flushing.hasRemaining()) {
+                    channel.write(flushing);
+                }
+                flushing.clear();
+                if (roll || wrote && fsyncPolicy != FsyncPolicy.NEVER) {
+                    channel.force(false);
+                }
+                if (roll) {
+                    channel.close();
+                    channel = openSegment(segmentNumber + 1);
+                }
+
+                lock.lock();
+                try {
+                    durableSequence = sequence;
+                    if (roll) {
+                        segmentNumber++;
+                        rollRequested = false;
+                    }
+                    signal.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                if (stopping) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            lock.lock();
+            try {
+                failure = e;
+                signal.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private FileChannel openSegment(long number) throws IOException {
+        FileChannel segment = FileChannel.open(segmentPath(number), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(4).putInt(SEGMENT_MAGIC);
+        header.flip();
+        while (header.hasRemaining()) {
+            segment.write(header);
+        }
+        segment.force(true);
+        syncDirectory();
+        return segment;
+    }
+
+    private void readSnapshot(Path path, ReplayHandler handler) throws IOException {
+        try (CheckedInputStream checked = new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(path), 1 << 16), new CRC32())) {
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a measurement snapshot: " + path);
+            }
+            long count = 0;
+            while (in.readByte() == PUT) {
+                long timestamp = in.readLong();
+                handler.put(timestamp, new Metrics(in.readFloat(), in.readFloat(), in.readFloat()));
+                count++;
+            }
+            long expectedCount = in.readLong();
+            int expectedChecksum = (int) checked.getChecksum().getValue();
+            if (in.readInt() != expectedChecksum || expectedCount != count) {
+                throw new IOException("Corrupt measurement snapshot: " + path);
+            }
+        }
+    }
+
+    /**
+     * Replays the records of one segment, a torn or corrupt record ends the segment since nothing after it was acknowledged
+     */
+    private void replaySegment(Path path, ReplayHandler handler) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != SEGMENT_MAGIC) {
+                throw new IOException("Not a measurement log segment: " + path);
+            }
+            byte[] record = new byte[RECORD_SIZE];
+            ByteBuffer buffer = ByteBuffer.wrap(record);
+            CRC32 checksum = new CRC32();
+            while (true) {
+                try {
+                    in.readFully(record);
+                } catch (EOFException e) {
+                    return;
+                }
+                checksum.reset();
+                checksum.update(record, 0, RECORD_SIZE - 4);
+                buffer.clear();
+                byte type = buffer.get();
+                long timestamp = buffer.getLong();
+                Metrics metrics = new Metrics(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+                if (buffer.getInt() != (int) checksum.getValue()) {
+                    return;
+                }
+                if (type == PUT) {
+                    handler.put(timestamp, metrics);
+                } else if (type == REMOVE) {
+                    handler.remove(timestamp);
+                } else {
+                    return;
+                }
+            }
+        } catch (EOFException e) {
+            // a segment created right before a crash may not even have its header
+        }
+    }
+
+    private TreeMap<Long, Path> listFiles(Pattern pattern) throws IOException {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directoryPath)) {
+            for (Path path : stream) {
+                Matcher matcher = pattern.matcher(path.getFileName().toString());
+                if (matcher.matches()) {
+                    files.put(Long.parseLong(matcher.group(1)), path);
+                }
+            }
+        }
+        return files;
+    }
+
+    private Path segmentPath(long number) {
+        return directoryPath.resolve(String.format("wal-%020d.log", number));
+    }
+
+    private Path snapshotPath(long number) {
+        return directoryPath.resolve(String.format("snapshot-%020d.bin", number));
+    }
+
+    private void syncDirectory() {
+        // makes created and renamed files durable on Linux, other platforms do not support opening directories
+        try (FileChannel directoryChannel = FileChannel.open(directoryPath, StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        } catch (IOException e) {
+            // best effort
+        }
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new UncheckedIOException("Measurement log is unavailable", failure);
+        }
+    }
+
+    private void waitForSignal() {
+        try {
+            signal.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the measurement log", e);
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package store.impl;
+
+import model.MetricAccumulator;
+import model.MetricType;
+import model.Metrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import store.MeasurementBatch;
+import store.MeasurementStore;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Running stats over sliding windows ending now, for example the last five minutes or the last hour.
+ * Each window is a ring of equally long slots which slide forward with the clock, a window covers its newest
+ * slot and the slots before it, so its start moves in steps of one slot. Writers call the same begin and end
+ * hooks as for the RollupIndex and update the slot of their timestamp under the slot's own monitor, a read merges
+ * the slots of the window, so reading costs the same however much history is stored.
+ * Writes older than the window are dropped against the clock without any lock, so backfill does not touch the
+ * windows at all. The window monitor is only taken to move the ring forward and for writes ahead of the clock.
+ * Late samples, updates and deletes change the slot of their timestamp. A slot whose min or max can no
+ * longer be derived incrementally, or which receives samples while still ahead of the clock,
+ * is rebuilt from the store on the next read.
+ */
+@Component
+public class LiveWindows {
+
+    private static final MetricType[] METRIC_TYPES = MetricType.values();
+
+    @Autowired
+    private MeasurementStore measurementStore;
+
+    private Clock clock = Clock.systemUTC();
+
+    private final Map<Duration, Window> windows = new LinkedHashMap<>();
+
+    public LiveWindows(@Value("${measurement.live.windows:PT5M,PT1H,PT24H}") String windows,
+                       @Value("${measurement.live.slots:600}") int slots) {
+        for (String window : windows.split(",")) {
+            Duration length = Duration.parse(window.trim());
+            this.windows.put(length, new Window(length.toMillis(), slots));
+        }
+    }
+
+    /**
+     * The configured window lengths, reads of other lengths are not answered
+     */
+    public Set<Duration> getWindows() {
+        return Collections.unmodifiableSet(windows.keySet());
+    }
+
+    public void beginWrite(long timestamp) {
+        long now = clock.millis();
+        for (Window window : windows.values()) {
+            window.beginWrite(now, timestamp);
+        }
+    }
+
+    /**
+     * Applies a finished write, previous and current are the metrics before and after the write (null if absent)
+     */
+    public void endWrite(long timestamp, Metrics previous, Metrics current) {
+        long now = clock.millis();
+        for (Window window : windows.values()) {
+            window.endWrite(now, timestamp, previous, current);
+        }
+    }
+
+    public void beginWrites(long[] timestamps, int count) {
+        long now = clock.millis();
+        for (Window window : windows.values()) {
+            for (int i = 0; i < count; i++) {
+                window.beginWrite(now, timestamps[i]);
+            }
+        }
+    }
+
+    /**
+     * Batch form of endWrite, the arrays are applied in index order
+     */
+    public void endWrites(long[] timestamps, Metrics[] previous, Metrics[] current) {
+        long now = clock.millis();
+        for (Window window : windows.values()) {
+            for (int i = 0; i < timestamps.length; i++) {
+                window.endWrite(now, timestamps[i], previous[i], current[i]);
+            }
+        }
+    }
+
+    /**
+     * Batch end of write for a stored MeasurementBatch, slots with replaced rows are rebuilt on their next read
+     */
+    public void endWrites(MeasurementBatch batch) {
+        long now = clock.millis();
+        for (Window window : windows.values()) {
+            for (int i = 0; i < batch.size(); i++) {
+                window.endWrite(now, batch, i);
+            }
+        }
+    }
+
+    /**
+     * Ends a write whose outcome is unknown, the affected slot is rebuilt on its next read
+     */
+    public void abortWrite(long timestamp) {
+        long now = clock.millis();
+        for (Window window : windows.values()) {
+            window.abortWrite(now, timestamp);
+        }
+    }
+
+    /**
+     * Merges the stats of the window ending now into the non null accumulators, which are indexed by
+     * MetricType ordinal. Returns false if no window of that length is configured.
+     */
+    public boolean aggregate(Duration length, MetricAccumulator[] accumulators) {
+        Window window = windows.get(length);
+        if (window == null) {
+            return false;
+        }
+        window.aggregate(clock.millis(), accumulators);
+        return true;
+    }
+
+    /**
+     * One sliding window. The ring of slots and the writes ahead of the clock are guarded by the window monitor,
+     * the state of a slot by the slot monitor.
+     */
+    private final class Window {
+
+        private final long slotLength;
+        private final int slotCount;
+        private final AtomicReferenceArray<Slot> slots;
+        private volatile long head = Long.MIN_VALUE; // start of the newest slot, set on first use
+
+        private final HashMap<Long, Integer> aheadInFlight = new HashMap<>(); // writes in progress per slot start
+        private final TreeSet<Long> aheadSlots = new TreeSet<>(); // starts of slots written before they were reached
+
+        private Window(long length, int slotCount) {
+            this.slotLength = Math.max(1L, length / slotCount);
+            this.slotCount = slotCount;
+            this.slots = new AtomicReferenceArray<>(slotCount);
+        }
+
+        void beginWrite(long now, long timestamp) {
+            long start = RollupIndex.floor(timestamp, slotLength);
+            if (isBehind(now, start)) {
+                return;
+            }
+            advance(now);
+            if (start > head && trackAhead(now, start, true)) {
+                return;
+            }
+            Slot slot = slots.get(index(start));
+            if (slot.start == start) {
+                synchronized (slot) {
+                    slot.inFlight++;
+                }
+            }
+        }
+
+        void endWrite(long now, long timestamp, Metrics previous, Metrics current) {
+            Slot slot = writtenSlot(now, timestamp);
+            if (slot == null) {
+                return;
+            }
+            synchronized (slot) {
+                if (!slot.endWrite()) {
+                    return;
+                }
+                for (MetricType metricType : METRIC_TYPES) {
+                    MetricAccumulator accumulator = slot.accumulators[metricType.ordinal()];
+                    if (previous != null && !accumulator.remove(metricType.valueOf(previous))) {
+                        slot.stale = true;
+                        return;
+                    }
+                    if (current != null) {
+                        accumulator.accept(metricType.valueOf(current));
+                    }
+                }
+            }
+        }
+
+        void endWrite(long now, MeasurementBatch batch, int index) {
+            Slot slot = writtenSlot(now, batch.getTimestamp(index));
+            if (slot == null) {
+                return;
+            }
+            synchronized (slot) {
+                if (!slot.endWrite()) {
+                    return;
+                }
+                if (batch.isReplaced(index)) {
+                    slot.stale = true;
+                    return;
+                }
+                for (MetricType metricType : METRIC_TYPES) {
+                    slot.accumulators[metricType.ordinal()].accept(batch.getValue(metricType, index));
+                }
+            }
+        }
+
+        void abortWrite(long now, long timestamp) {
+            Slot slot = writtenSlot(now, timestamp);
+            if (slot != null) {
+                synchronized (slot) {
+                    slot.endWrite();
+                    slot.stale = true;
+                }
+            }
+        }
+
+        /**
+         * Common part of ending a write, returns the slot to update or null if the write is outside the window
+         */
+        private Slot writtenSlot(long now, long timestamp) {
+            long start = RollupIndex.floor(timestamp, slotLength);
+            if (isBehind(now, start)) {
+                return null;
+            }
+            advance(now);
+            if (start > head && trackAhead(now, start, false)) {
+                return null;
+            }
+            Slot slot = slots.get(index(start));
+            // a slot which left the window in the meantime has been replaced by a later one
+            return slot.start == start ? slot : null;
+        }
+
+        void aggregate(long now, MetricAccumulator[] target) {
+            advance(now);
+            long windowStart = windowStart(head);
+            List<Slot> staleSlots = new ArrayList<>();
+            List<Long> staleEpochs = new ArrayList<>();
+            for (int index = 0; index < slotCount; index++) {
+                Slot slot = slots.get(index);
+                if (slot == null || slot.start < windowStart) {
+                    continue;
+                }
+                synchronized (slot) {
+                    if (slot.stale) {
+                        staleSlots.add(slot);
+                        staleEpochs.add(slot.epoch);
+                        continue;
+                    }
+                    for (int i = 0; i < METRIC_TYPES.length; i++) {
+                        if (target[i] != null) {
+                            target[i].merge(slot.accumulators[i]);
+                        }
+                    }
+                }
+            }
+
+            // stale slots are read from the store without holding their monitor and kept if no write raced the scan
+            for (int n = 0; n < staleSlots.size(); n++) {
+                Slot slot = staleSlots.get(n);
+                MetricAccumulator[] rebuilt = newAccumulators();
+                measurementStore.scan(slot.start, slot.start + slotLength, (timestamp, metrics) -> {
+                    for (MetricType metricType : METRIC_TYPES) {
+                        rebuilt[metricType.ordinal()].accept(metricType.valueOf(metrics));
+                    }
+                });
+                synchronized (slot) {
+                    if (slot.stale && slot.epoch == staleEpochs.get(n) && slot.inFlight == 0) {
+                        for (int i = 0; i < METRIC_TYPES.length; i++) {
+                            slot.accumulators[i].reset();
+                            slot.accumulators[i].merge(rebuilt[i]);
+                        }
+                        slot.stale = false;
+                    }
+                }
+                for (int i = 0; i < METRIC_TYPES.length; i++) {
+                    if (target[i] != null) {
+                        target[i].merge(rebuilt[i]);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Whether a slot start is older than the window at the clock, the window only moves forward so it never
+         * comes back. Checked against the clock rather than the head, which may not have caught up yet.
+         */
+        private boolean isBehind(long now, long start) {
+            return start < windowStart(RollupIndex.floor(now, slotLength));
+        }
+
+        /**
+         * Begins or ends a write ahead of the clock under the window monitor, returns false if the clock has
+         * reached its slot in the meantime and the write goes to the slot instead
+         */
+        private synchronized boolean trackAhead(long now, long start, boolean begin) {
+            advance(now);
+            if (start <= head) {
+                return false;
+            }
+            if (begin) {
+                aheadInFlight.merge(start, 1, Integer::sum);
+            } else {
+                aheadInFlight.computeIfPresent(start, (key, writes) -> writes == 1 ? null : writes - 1);
+                // read back from the store once the clock reaches the slot
+                aheadSlots.add(start);
+            }
+            return true;
+        }
+
+        /**
+         * Moves the window to the clock, slots which fall out are replaced by new ones. The head is published
+         * last, so a slot up to the head is always in place.
+         */
+        private void advance(long now) {
+            long newHead = RollupIndex.floor(now, slotLength);
+            if (newHead <= head) {
+                return;
+            }
+            synchronized (this) {
+                long oldHead = head;
+                if (newHead <= oldHead) {
+                    return;
+                }
+                long windowStart = windowStart(newHead);
+                long start = oldHead == Long.MIN_VALUE ? windowStart : Math.max(oldHead + slotLength, windowStart);
+                for (; start <= newHead; start += slotLength) {
+                    Slot slot = new Slot(start);
+                    slot.stale = aheadSlots.remove(start);
+                    Integer writes = aheadInFlight.remove(start);
+                    if (writes != null) {
+                        slot.inFlight = writes;
+                    }
+                    slots.set(index(start), slot);
+                }
+                aheadSlots.headSet(windowStart).clear();
+                aheadInFlight.keySet().removeIf(slotStart -> slotStart < windowStart);
+                head = newHead;
+            }
+        }
+
+        private long windowStart(long head) {
+            return head - (slotCount - 1) * slotLength;
+        }
+
+        private int index(long start) {
+            return (int) Math.floorMod(Math.floorDiv(start, slotLength), (long) slotCount);
+        }
+    }
+
+    /**
+     * One slot of a window, guarded by the slot monitor
+     */
+    private static final class Slot {
+
+        private final long start;
+        private final MetricAccumulator[] accumulators = newAccumulators();
+        private int inFlight; // writes begun and not yet ended
+        private long epoch;
+        private boolean stale;
+
+        private Slot(long start) {
+            this.start = start;
+        }
+
+        /**
+         * Counts a finished write, returns false if the slot is waiting for a rebuild and needs no update
+         */
+        private boolean endWrite() {
+            if (inFlight > 0) {
+                inFlight--;
+            }
+            epoch++;
+            return !stale;
+        }
+    }
+
+    private static MetricAccumulator[] newAccumulators() {
+        MetricAccumulator[] accumulators = new MetricAccumulator[METRIC_TYPES.length];
+        for (int i = 0; i < accumulators.length; i++) {
+            accumulators[i] = new MetricAccumulator();
+        }
+        return accumulators;
+    }
+}
@@ -0,0 +1,38 @@
+package store.impl;
+
+import model.Metrics;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import store.MeasurementBatch;
+import store.MeasurementLog;
+
+/**
+ * Log used when persistence is disabled, the store then lives in memory only
+ */
+@Component
+@ConditionalOnProperty(name = "measurement.persistence.enabled", havingValue = "false", matchIfMissing = true)
+public class NoOpMeasurementLog implements MeasurementLog {
+
+    @Override
+    public long logPut(long timestamp, Metrics metrics) {
+        return 0;
+    }
+
+    @Override
+    public long logRemove(long timestamp) {
+        return 0;
+    }
+
+    @Override
+    public long logBatch(MeasurementBatch batch) {
+        return 0;
+    }
+
+    @Override
+    public void awaitDurable(long sequence) {
+    }
+
+    @Override
+    public void recover(ReplayHandler handler) {
+    }
+}
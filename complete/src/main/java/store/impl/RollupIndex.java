@@ -0,0 +1,291 @@
+package store.impl;
+
+import model.MetricAccumulator;
+import model.MetricType;
+import model.Metrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import store.MeasurementBatch;
+import store.MeasurementStore;
+
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Hourly and daily rollup tiers over the measurement store.
+ * Every bucket keeps a MetricAccumulator per metric which is updated on each write, so stats over
+ * long ranges merge buckets instead of reading every raw row. Bucket accumulators carry a quantile sketch,
+ * so percentiles over long ranges are merged from the buckets as well.
+ * Writers call beginWrite before changing the store and endWrite afterwards; a bucket whose min or max
+ * can no longer be derived incrementally is marked stale and rebuilt on the next read.
+ */
+@Component
+public class RollupIndex {
+
+    public static final long HOUR_MILLIS = 60 * 60 * 1000L;
+    public static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+
+    private static final MetricType[] METRIC_TYPES = MetricType.values();
+
+    @Autowired
+    private MeasurementStore measurementStore;
+
+    private final ConcurrentSkipListMap<Long, Bucket> hourBuckets = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<Long, Bucket> dayBuckets = new ConcurrentSkipListMap<>();
+
+    public void beginWrite(long timestamp) {
+        bucket(hourBuckets, floor(timestamp, HOUR_MILLIS), HOUR_MILLIS).beginWrite();
+        bucket(dayBuckets, floor(timestamp, DAY_MILLIS), DAY_MILLIS).beginWrite();
+    }
+
+    /**
+     * Applies a finished write, previous and current are the metrics before and after the write (null if absent)
+     */
+    public void endWrite(long timestamp, Metrics previous, Metrics current) {
+        hourBuckets.get(floor(timestamp, HOUR_MILLIS)).endWrite(previous, current);
+        dayBuckets.get(floor(timestamp, DAY_MILLIS)).endWrite(previous, current);
+    }
+
+    /**
+     * Batch form of beginWrite, consecutive timestamps in the same bucket share one monitor acquisition
+     */
+    public void beginWrites(long[] timestamps, int count) {
+        beginWrites(hourBuckets, HOUR_MILLIS, timestamps, count);
+        beginWrites(dayBuckets, DAY_MILLIS, timestamps, count);
+    }
+
+    /**
+     * Batch form of endWrite, the arrays are applied in index order
+     */
+    public void endWrites(long[] timestamps, Metrics[] previous, Metrics[] current) {
+        endWrites(hourBuckets, HOUR_MILLIS, timestamps, previous, current);
+        endWrites(dayBuckets, DAY_MILLIS, timestamps, previous, current);
+    }
+
+    /**
+     * Batch end of write for a stored MeasurementBatch, new rows are added to the rollups and buckets
+     * with replaced rows are rebuilt on their next read since the batch does not carry the previous values
+     */
+    public void endWrites(MeasurementBatch batch) {
+        endWrites(hourBuckets, HOUR_MILLIS, batch);
+        endWrites(dayBuckets, DAY_MILLIS, batch);
+    }
+
+    /**
+     * Ends a write whose outcome is unknown, the affected buckets are rebuilt on their next read
+     */
+    public void abortWrite(long timestamp) {
+        hourBuckets.get(floor(timestamp, HOUR_MILLIS)).abortWrite();
+        dayBuckets.get(floor(timestamp, DAY_MILLIS)).abortWrite();
+    }
+
+    /**
+     * Merges the rollups of the hour aligned range [fromInclusive, toExclusive) into the non null accumulators,
+     * which are indexed by MetricType ordinal. Whole days are taken from the daily tier and the rest from the hourly tier.
+     */
+    public void aggregate(long fromInclusive, long toExclusive, MetricAccumulator[] accumulators) {
+        long dayFrom = ceil(fromInclusive, DAY_MILLIS);
+        long dayTo = floor(toExclusive, DAY_MILLIS);
+        if (dayFrom < dayTo) {
+            aggregate(hourBuckets, fromInclusive, dayFrom, accumulators);
+            aggregate(dayBuckets, dayFrom, dayTo, accumulators);
+            aggregate(hourBuckets, dayTo, toExclusive, accumulators);
+        } else {
+            aggregate(hourBuckets, fromInclusive, toExclusive, accumulators);
+        }
+    }
+
+    public static long floor(long timestamp, long unit) {
+        return Math.floorDiv(timestamp, unit) * unit;
+    }
+
+    public static long ceil(long timestamp, long unit) {
+        return -Math.floorDiv(-timestamp, unit) * unit;
+    }
+
+    private void beginWrites(ConcurrentSkipListMap<Long, Bucket> buckets, long length, long[] timestamps, int count) {
+        int runStart = 0;
+        while (runStart < count) {
+            long start = floor(timestamps[runStart], length);
+            int runEnd = endOfRun(timestamps, count, runStart, length, start);
+            Bucket bucket = bucket(buckets, start, length);
+            synchronized (bucket) {
+                for (int i = runStart; i < runEnd; i++) {
+                    bucket.beginWrite();
+                }
+            }
+            runStart = runEnd;
+        }
+    }
+
+    private void endWrites(ConcurrentSkipListMap<Long, Bucket> buckets, long length, long[] timestamps,
+                           Metrics[] previous, Metrics[] current) {
+        int runStart = 0;
+        while (runStart < timestamps.length) {
+            long start = floor(timestamps[runStart], length);
+            int runEnd = endOfRun(timestamps, timestamps.length, runStart, length, start);
+            Bucket bucket = buckets.get(start);
+            synchronized (bucket) {
+                for (int i = runStart; i < runEnd; i++) {
+                    bucket.endWrite(previous[i], current[i]);
+                }
+            }
+            runStart = runEnd;
+        }
+    }
+
+    private void endWrites(ConcurrentSkipListMap<Long, Bucket> buckets, long length, MeasurementBatch batch) {
+        int runStart = 0;
+        while (runStart < batch.size()) {
+            long start = floor(batch.getTimestamp(runStart), length);
+            int runEnd = endOfRun(batch.getTimestamps(), batch.size(), runStart, length, start);
+            Bucket bucket = buckets.get(start);
+            synchronized (bucket) {
+                for (int i = runStart; i < runEnd; i++) {
+                    bucket.endWrite(batch, i);
+                }
+            }
+            runStart = runEnd;
+        }
+    }
+
+    private static int endOfRun(long[] timestamps, int count, int runStart, long length, long start) {
+        int runEnd = runStart + 1;
+        while (runEnd < count && floor(timestamps[runEnd], length) == start) {
+            runEnd++;
+        }
+        return runEnd;
+    }
+
+    private void aggregate(ConcurrentSkipListMap<Long, Bucket> buckets, long fromInclusive, long toExclusive,
+                           MetricAccumulator[] accumulators) {
+        if (fromInclusive >= toExclusive) {
+            return;
+        }
+        for (Bucket bucket : buckets.subMap(fromInclusive, true, toExclusive, false).values()) {
+            bucket.mergeInto(accumulators);
+        }
+    }
+
+    private Bucket bucket(ConcurrentSkipListMap<Long, Bucket> buckets, long start, long length) {
+        Bucket bucket = buckets.get(start);
+        if (bucket == null) {
+            bucket = buckets.computeIfAbsent(start, key -> new Bucket(key, length));
+        }
+        return bucket;
+    }
+
+    private static MetricAccumulator[] newAccumulators() {
+        MetricAccumulator[] accumulators = new MetricAccumulator[METRIC_TYPES.length];
+        for (int i = 0; i < accumulators.length; i++) {
+            accumulators[i] = new MetricAccumulator(true);
+        }
+        return accumulators;
+    }
+
+    private static void merge(MetricAccumulator[] source, MetricAccumulator[] target) {
+        for (int i = 0; i < target.length; i++) {
+            if (target[i] != null) {
+                target[i].merge(source[i]);
+            }
+        }
+    }
+
+    /**
+     * One rollup bucket, all state is guarded by the bucket monitor.
+     * The epoch and in flight count let a rebuild detect writes that raced with its raw scan.
+     */
+    private final class Bucket {
+
+        private final long start;
+        private final long length;
+        private final MetricAccumulator[] accumulators = newAccumulators();
+        private int inFlight;
+        private long epoch;
+        private boolean stale;
+
+        private Bucket(long start, long length) {
+            this.start = start;
+            this.length = length;
+        }
+
+        synchronized void beginWrite() {
+            inFlight++;
+        }
+
+        synchronized void endWrite(Metrics previous, Metrics current) {
+            inFlight--;
+            epoch++;
+            if (stale) {
+                return;
+            }
+            for (MetricType metricType : METRIC_TYPES) {
+                MetricAccumulator accumulator = accumulators[metricType.ordinal()];
+                if (previous != null && !accumulator.remove(metricType.valueOf(previous))) {
+                    stale = true;
+                    return;
+                }
+                if (current != null) {
+                    accumulator.accept(metricType.valueOf(current));
+                }
+            }
+        }
+
+        synchronized void endWrite(MeasurementBatch batch, int index) {
+            inFlight--;
+            epoch++;
+            if (stale) {
+                return;
+            }
+            if (batch.isReplaced(index)) {
+                stale = true;
+                return;
+            }
+            for (MetricType metricType : METRIC_TYPES) {
+                accumulators[metricType.ordinal()].accept(batch.getValue(metricType, index));
+            }
+        }
+
+        synchronized void abortWrite() {
+            inFlight--;
+            epoch++;
+            stale = true;
+        }
+
+        void mergeInto(MetricAccumulator[] target) {
+            long observedEpoch;
+            synchronized (this) {
+                if (!stale) {
+                    merge(accumulators, target);
+                    return;
+                }
+                observedEpoch = epoch;
+            }
+
+            MetricAccumulator[] rebuilt = rebuild();
+            synchronized (this) {
+                if (stale && inFlight == 0 && epoch == observedEpoch) {
+                    for (int i = 0; i < accumulators.length; i++) {
+                        accumulators[i].reset();
+                        accumulators[i].merge(rebuilt[i]);
+                    }
+                    stale = false;
+                }
+            }
+            merge(rebuilt, target);
+        }
+
+        private MetricAccumulator[] rebuild() {
+            MetricAccumulator[] rebuilt = newAccumulators();
+            if (length == DAY_MILLIS) {
+                aggregate(hourBuckets, start, start + length, rebuilt);
+            } else {
+                measurementStore.scan(start, start + length, (timestamp, metrics) -> {
+                    for (MetricType metricType : METRIC_TYPES) {
+                        rebuilt[metricType.ordinal()].accept(metricType.valueOf(metrics));
+                    }
+                });
+            }
+            return rebuilt;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package store.impl;
+
+import model.MetricAccumulator;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Count / sum / sum of squares / min / max over slices of primitive metric columns.
+ * Callers resolve the time range to an index range with a binary search over the timestamp column first.
+ * The loops are plain counted loops over arrays with no calls and no allocation, so the JIT can unroll them;
+ * runs whose validity words are all set skip the per value test entirely. The result of a slice is merged into
+ * the accumulator once instead of accepting every value, only accumulators with a sketch still see every value.
+ * A Vector API path is not offered since jdk.incubator.vector is still an incubator module on Java 21 and would
+ * need --add-modules on every launch.
+ */
+public final class ScanKernels {
+
+    private static final int BLOCK = 1024; // floats copied out of a mapped column per step
+
+    private ScanKernels() {
+    }
+
+    /**
+     * Accumulates values[from, to) whose bit is set in the validity bitmap, bit i of word i / 64 belongs to value i
+     */
+    public static void accumulate(float[] values, long[] validity, int from, int to, MetricAccumulator accumulator) {
+        if (from >= to) {
+            return;
+        }
+        if (accumulator.hasSketch()) {
+            for (int i = from; i < to; i++) {
+                if ((validity[i >>> 6] & (1L << i)) != 0) {
+                    accumulator.accept(values[i]);
+                }
+            }
+            return;
+        }
+        long count = 0;
+        double sum = 0.0;
+        double sumOfSquares = 0.0;
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        int i = from;
+        while (i < to) {
+            int word = i >>> 6;
+            long bits = validity[word];
+            int runEnd = Math.min(to, (word + 1) << 6);
+            if (bits == -1L) {
+                // extend the run over following full words so the dense loop below is as long as possible
+                while (runEnd < to && validity[runEnd >>> 6] == -1L) {
+                    runEnd = Math.min(to, runEnd + 64);
+                }
+                for (int j = i; j < runEnd; j++) {
+                    float value = values[j];
+                    sum += value;
+                    sumOfSquares += (double) value * value;
+                    min = value < min ? value : min;
+                    max = value > max ? value : max;
+                }
+                count += runEnd - i;
+            } else if (bits != 0L) {
+                for (int j = i; j < runEnd; j++) {
+                    if ((bits & (1L << j)) != 0) {
+                        float value = values[j];
+                        count++;
+                        sum += value;
+                        sumOfSquares += (double) value * value;
+                        min = value < min ? value : min;
+                        max = value > max ? value : max;
+                    }
+                }
+            }
+            i = runEnd;
+        }
+        accumulator.merge(count, sum, sumOfSquares, min, max);
+    }
+
+    /**
+     * Accumulates values[from, to) which are not 0.0, the marker of a missing reading in columns without a bitmap
+     */
+    public static void accumulateNonZero(float[] values, int from, int to, MetricAccumulator accumulator) {
+        if (from >= to) {
+            return;
+        }
+        if (accumulator.hasSketch()) {
+            for (int i = from; i < to; i++) {
+                accumulator.accept(values[i]);
+            }
+            return;
+        }
+        long count = 0;
+        double sum = 0.0;
+        double sumOfSquares = 0.0;
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        for (int i = from; i < to; i++) {
+            float value = values[i];
+            // a missing 0.0 adds nothing to the sums, only count, min and max need the test
+            boolean present = value != 0.0f;
+            count += present ? 1 : 0;
+            sum += value;
+            sumOfSquares += (double) value * value;
+            min = present && value < min ? value : min;
+            max = present && value > max ? value : max;
+        }
+        accumulator.merge(count, sum, sumOfSquares, min, max);
+    }
+
+    /**
+     * Accumulates the non missing values remaining in the column, copying blocks of it to the heap with bulk reads
+     */
+    public static void accumulateNonZero(FloatBuffer column, MetricAccumulator accumulator) {
+        float[] block = new float[Math.min(BLOCK, column.remaining())];
+        while (column.hasRemaining()) {
+            int length = Math.min(block.length, column.remaining());
+            column.get(block, 0, length);
+            accumulateNonZero(block, 0, length, accumulator);
+        }
+    }
+}
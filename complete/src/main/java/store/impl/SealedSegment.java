@@ -0,0 +1,175 @@
+package store.impl;
+
+import model.MetricAccumulator;
+import model.MetricType;
+import model.Metrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Immutable, memory-mapped file holding one sealed time partition in column layout:
+ * a header with the row count, the min / max timestamp and count / sum / sum of squares / min / max of every metric,
+ * followed by the sorted timestamp column and one float column per metric (0.0 for a missing reading).
+ * Rows are read straight from the mapping, nothing of the partition is kept on the heap apart from the header.
+ */
+final class SealedSegment {
+
+    private static final int MAGIC = 0x53454732;
+    private static final MetricType[] METRIC_TYPES = MetricType.values();
+    private static final int METRIC_HEADER_SIZE = 8 + 8 + 8 + 4 + 4;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + METRIC_TYPES.length * METRIC_HEADER_SIZE;
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int size;
+    private final long minTimestamp;
+    private final long maxTimestamp;
+    private final MetricAccumulator[] metricHeaders = new MetricAccumulator[METRIC_TYPES.length];
+    private final int[] columnOffsets = new int[METRIC_TYPES.length];
+
+    private SealedSegment(Path path, MappedByteBuffer buffer) throws IOException {
+        this.path = path;
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a sealed measurement segment: " + path);
+        }
+        size = buffer.getInt(4);
+        minTimestamp = buffer.getLong(8);
+        maxTimestamp = buffer.getLong(16);
+        for (MetricType metricType : METRIC_TYPES) {
+            int offset = 24 + metricType.ordinal() * METRIC_HEADER_SIZE;
+            MetricAccumulator header = new MetricAccumulator();
+            header.merge(buffer.getLong(offset), buffer.getDouble(offset + 8), buffer.getDouble(offset + 16),
+                    buffer.getFloat(offset + 24), buffer.getFloat(offset + 28));
+            metricHeaders[metricType.ordinal()] = header;
+            columnOffsets[metricType.ordinal()] = HEADER_SIZE + size * 8 + metricType.ordinal() * size * 4;
+        }
+    }
+
+    /**
+     * Writes the first count rows of the given columns to a new file, forces it to disk and maps it
+     */
+    static SealedSegment write(Path path, long[] timestamps, float[][] values, int count) throws IOException {
+        int length = HEADER_SIZE + count * 8 + METRIC_TYPES.length * count * 4;
+        ByteBuffer content = ByteBuffer.allocate(length);
+        content.putInt(MAGIC).putInt(count).putLong(timestamps[0]).putLong(timestamps[count - 1]);
+        for (MetricType metricType : METRIC_TYPES) {
+            MetricAccumulator header = new MetricAccumulator();
+            for (int i = 0; i < count; i++) {
+                header.accept(values[metricType.ordinal()][i]);
+            }
+            content.putLong(header.getCount()).putDouble(header.getSum()).putDouble(header.getSumOfSquares())
+                    .putFloat(header.getMin()).putFloat(header.getMax());
+        }
+        for (int i = 0; i < count; i++) {
+            content.putLong(timestamps[i]);
+        }
+        for (MetricType metricType : METRIC_TYPES) {
+            for (int i = 0; i < count; i++) {
+                content.putFloat(values[metricType.ordinal()][i]);
+            }
+        }
+        content.flip();
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+            channel.force(true);
+            // the mapping stays valid after the channel is closed
+            return new SealedSegment(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, length));
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    long getMinTimestamp() {
+        return minTimestamp;
+    }
+
+    long getMaxTimestamp() {
+        return maxTimestamp;
+    }
+
+    /**
+     * True if no row of the segment can fall into [fromInclusive, toExclusive)
+     */
+    boolean isOutside(long fromInclusive, long toExclusive) {
+        return maxTimestamp < fromInclusive || minTimestamp >= toExclusive;
+    }
+
+    /**
+     * Count, sum, sum of squares, min and max of one metric over the whole segment, taken from the header
+     */
+    MetricAccumulator getMetricHeader(MetricType metricType) {
+        return metricHeaders[metricType.ordinal()];
+    }
+
+    long timestamp(int index) {
+        return buffer.getLong(HEADER_SIZE + index * 8);
+    }
+
+    float value(MetricType metricType, int index) {
+        return buffer.getFloat(columnOffsets[metricType.ordinal()] + index * 4);
+    }
+
+    /**
+     * Accumulates one metric over the rows [from, to) with bulk reads of its column
+     */
+    void accumulate(MetricType metricType, int from, int to, MetricAccumulator accumulator) {
+        if (from >= to) {
+            return;
+        }
+        ByteBuffer column = buffer.duplicate();
+        column.limit(columnOffsets[metricType.ordinal()] + to * 4).position(columnOffsets[metricType.ordinal()] + from * 4);
+        ScanKernels.accumulateNonZero(column.slice().asFloatBuffer(), accumulator);
+    }
+
+    Metrics materialize(int index) {
+        return new Metrics(
+                value(MetricType.TEMPERATURE, index),
+                value(MetricType.DEW_POINT, index),
+                value(MetricType.PRECIPITATION, index));
+    }
+
+    int indexOf(long timestamp) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleTimestamp = timestamp(middle);
+            if (middleTimestamp < timestamp) {
+                low = middle + 1;
+            } else if (middleTimestamp > timestamp) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Index of the first row whose timestamp is not before the given timestamp
+     */
+    int lowerBound(long timestamp) {
+        int index = indexOf(timestamp);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * Removes the file, the mapping itself is released once the segment is no longer referenced
+     */
+    void delete() throws IOException {
+        Files.deleteIfExists(path);
+    }
+}
@@ -0,0 +1,56 @@
+package store.impl;
+
+import model.Metrics;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import store.MeasurementStore;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Default measurement store backed by a ConcurrentSkipListMap keyed by epoch milliseconds.
+ * Point operations are O(log n), range scans are O(log n + k) and writers to different keys
+ * never serialize on a shared lock.
+ */
+@Component
+@ConditionalOnProperty(name = "measurement.store", havingValue = "skiplist", matchIfMissing = true)
+public class SkipListMeasurementStore implements MeasurementStore {
+
+    private final ConcurrentSkipListMap<Long, Metrics> measurements = new ConcurrentSkipListMap<>();
+
+    @Override
+    public Metrics put(long timestamp, Metrics metrics) {
+        return measurements.put(timestamp, metrics);
+    }
+
+    @Override
+    public Metrics get(long timestamp) {
+        return measurements.get(timestamp);
+    }
+
+    @Override
+    public Metrics replace(long timestamp, Metrics metrics) {
+        return measurements.replace(timestamp, metrics);
+    }
+
+    @Override
+    public Metrics remove(long timestamp) {
+        return measurements.remove(timestamp);
+    }
+
+    @Override
+    public void scan(long fromInclusive, long toExclusive, MeasurementVisitor visitor) {
+        if (fromInclusive >= toExclusive) {
+            return;
+        }
+        for (Map.Entry<Long, Metrics> entry : measurements.subMap(fromInclusive, true, toExclusive, false).entrySet()) {
+            visitor.visit(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public int size() {
+        return measurements.size();
+    }
+}
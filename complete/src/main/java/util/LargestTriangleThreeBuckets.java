@@ -0,0 +1,64 @@
+package util;
+
+/**
+ * Largest-Triangle-Three-Buckets downsampling of a time series for plotting.
+ * The first and last point are kept and every bucket in between keeps the point forming the largest
+ * triangle with the point kept before it and the average of the next bucket, which preserves peaks
+ * and the overall shape far better than taking every n-th point.
+ */
+public final class LargestTriangleThreeBuckets {
+
+    private LargestTriangleThreeBuckets() {
+    }
+
+    /**
+     * Returns the ascending indexes of the points to keep out of the first length points,
+     * all of them if length is not above threshold or threshold is below 3
+     */
+    public static int[] downsample(long[] x, float[] y, int length, int threshold) {
+        if (threshold >= length || threshold < 3) {
+            int[] all = new int[length];
+            for (int i = 0; i < length; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+        int[] kept = new int[threshold];
+        double every = (double) (length - 2) / (threshold - 2);
+        long origin = x[0]; // relative times keep the areas precise for epoch millisecond values
+        int previous = 0;
+        kept[0] = 0;
+        for (int i = 0; i < threshold - 2; i++) {
+            int averageFrom = (int) Math.floor((i + 1) * every) + 1;
+            int averageTo = Math.min((int) Math.floor((i + 2) * every) + 1, length);
+            double averageX = 0;
+            double averageY = 0;
+            for (int j = averageFrom; j < averageTo; j++) {
+                averageX += x[j] - origin;
+                averageY += y[j];
+            }
+            int averageLength = averageTo - averageFrom;
+            averageX /= averageLength;
+            averageY /= averageLength;
+
+            int rangeFrom = (int) Math.floor(i * every) + 1;
+            int rangeTo = (int) Math.floor((i + 1) * every) + 1;
+            double previousX = x[previous] - origin;
+            double previousY = y[previous];
+            double maxArea = -1;
+            int next = rangeFrom;
+            for (int j = rangeFrom; j < rangeTo; j++) {
+                double area = Math.abs((previousX - averageX) * (y[j] - previousY)
+                        - (previousX - (x[j] - origin)) * (averageY - previousY));
+                if (area > maxArea) {
+                    maxArea = area;
+                    next = j;
+                }
+            }
+            kept[i + 1] = next;
+            previous = next;
+        }
+        kept[threshold - 1] = length - 1;
+        return kept;
+    }
+}
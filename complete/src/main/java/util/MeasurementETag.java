@@ -0,0 +1,39 @@
+package util;
+
+import model.Metrics;
+
+/**
+ * Strong entity tags for single measurements, derived from the stored metric values.
+ * Equal values give equal tags, so a client holding the tag of what it last read can make a write conditional
+ * on nothing having changed since (If-Match) without the store keeping a version per record.
+ */
+public class MeasurementETag {
+
+    public static String of(float temperature, float dewPoint, float precipitation) {
+        long hash = Float.floatToIntBits(temperature) & 0xffffffffL;
+        hash = hash * 0x9E3779B97F4A7C15L + Float.floatToIntBits(dewPoint);
+        hash = hash * 0x9E3779B97F4A7C15L + Float.floatToIntBits(precipitation);
+        return "\"" + Long.toHexString(hash) + "\"";
+    }
+
+    public static String of(Metrics metrics) {
+        return of(metrics.getTemperature(), metrics.getDewPoint(), metrics.getPrecipation());
+    }
+
+    /**
+     * Evaluates an If-Match header value against the current metrics, null means the header was not sent
+     */
+    public static boolean matches(String ifMatch, Metrics current) {
+        if (ifMatch == null || ifMatch.trim().equals("*")) {
+            return true;
+        }
+        String currentTag = of(current);
+        for (String tag : ifMatch.split(",")) {
+            // If-Match uses the strong comparison, weak tags never match
+            if (tag.trim().equals(currentTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
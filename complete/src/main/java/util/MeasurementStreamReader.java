@@ -0,0 +1,237 @@
+package util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import model.IngestSummary;
+import model.MetricType;
+import store.MeasurementBatch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Incremental readers for streamed measurement bodies. Rows are parsed one at a time straight into a
+ * MeasurementBatch which is handed to the sink whenever it is full, so memory use does not depend on the body size.
+ * Missing metrics are stored as 0.0 like the single item endpoint does, rows with a bad timestamp or a
+ * non numeric metric are counted as rejected and skipped.
+ */
+public class MeasurementStreamReader {
+
+    private static final int TIMESTAMP_COLUMN = -2;
+    private static final int IGNORED_COLUMN = -1;
+
+    /**
+     * Parse state of the current CSV line, the header line maps every column to a metric ordinal
+     */
+    private static final class CsvRow {
+
+        private final StringBuilder field = new StringBuilder();
+        private final ArrayList<String> header = new ArrayList<>();
+        private final float[] values = new float[MetricType.values().length];
+        private int[] columns;
+        private int column;
+        private final StringBuilder timestamp = new StringBuilder();
+        private boolean hasTimestamp;
+        private boolean valid = true;
+        private boolean empty = true;
+
+        void endField() {
+            if (field.length() > 0) {
+                empty = false;
+            }
+            if (columns == null) {
+                header.add(field.toString().trim());
+            } else if (column < columns.length) {
+                int target = columns[column];
+                if (target == TIMESTAMP_COLUMN) {
+                    timestamp.setLength(0);
+                    timestamp.append(field);
+                    hasTimestamp = true;
+                } else if (target != IGNORED_COLUMN && field.length() > 0) {
+                    float value = parseFloat(field);
+                    if (Float.isNaN(value)) {
+                        valid = false;
+                    } else {
+                        values[target] = value;
+                    }
+                }
+            }
+            field.setLength(0);
+            column++;
+        }
+
+        void endRecord(MeasurementBatch batch, Consumer<MeasurementBatch> sink, IngestSummary summary) {
+            if (field.length() > 0 || column > 0) {
+                endField();
+            }
+            if (columns == null && !header.isEmpty()) {
+                columns = new int[header.size()];
+                boolean hasTimestamp = false;
+                for (int i = 0; i < columns.length; i++) {
+                    MetricType metricType = MetricType.fromName(header.get(i));
+                    if ("timestamp".equals(header.get(i))) {
+                        columns[i] = TIMESTAMP_COLUMN;
+                        hasTimestamp = true;
+                    } else {
+                        columns[i] = metricType == null ? IGNORED_COLUMN : metricType.ordinal();
+                    }
+                }
+                if (!hasTimestamp) {
+                    throw new IllegalArgumentException("CSV header has no timestamp column");
+                }
+            } else if (!empty) {
+                addRow(hasTimestamp ? timestamp : null, valid, values, batch, sink, summary);
+            }
+            column = 0;
+            hasTimestamp = false;
+            valid = true;
+            empty = true;
+            clear(values);
+        }
+    }
+
+    /**
+     * Reads newline delimited JSON objects with the fields of the single item endpoint
+     */
+    public static void readNdjson(JsonFactory jsonFactory, InputStream inputStream, MeasurementBatch batch,
+                                  Consumer<MeasurementBatch> sink, IngestSummary summary) throws IOException {
+        float[] values = new float[MetricType.values().length];
+        try (JsonParser parser = jsonFactory.createParser(inputStream)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    summary.incrementRejected();
+                    continue;
+                }
+                String timestamp = null;
+                boolean valid = true;
+                clear(values);
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    JsonToken valueToken = parser.nextToken();
+                    if ("timestamp".equals(field)) {
+                        if (valueToken == JsonToken.VALUE_STRING) {
+                            timestamp = parser.getText();
+                        } else {
+                            // an object or array timestamp must not be read as fields of this row or as rows
+                            parser.skipChildren();
+                            timestamp = null;
+                        }
+                        continue;
+                    }
+                    MetricType metricType = MetricType.fromName(field);
+                    if (metricType == null) {
+                        parser.skipChildren();
+                        continue;
+                    }
+                    float value = readFloat(parser, valueToken);
+                    if (Float.isNaN(value)) {
+                        valid = false;
+                    } else {
+                        values[metricType.ordinal()] = value;
+                    }
+                }
+                addRow(timestamp, valid, values, batch, sink, summary);
+            }
+        } catch (JsonProcessingException e) {
+            // rows before a malformed one are kept, the caller reports the error
+            flush(batch, sink);
+            throw e;
+        }
+        flush(batch, sink);
+    }
+
+    /**
+     * Reads comma separated rows, the first line is a header naming the columns (timestamp is required,
+     * temperature, dewPoint and precipitation are optional, other columns are ignored). Quoted fields are not supported.
+     */
+    public static void readCsv(InputStream inputStream, MeasurementBatch batch,
+                               Consumer<MeasurementBatch> sink, IngestSummary summary) throws IOException {
+        Reader reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
+        char[] buffer = new char[8192];
+        CsvRow row = new CsvRow();
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            for (int i = 0; i < read; i++) {
+                char c = buffer[i];
+                if (c == ',') {
+                    row.endField();
+                } else if (c == '\n') {
+                    row.endRecord(batch, sink, summary);
+                } else if (c != '\r') {
+                    row.field.append(c);
+                }
+            }
+        }
+        // the last line may not end with a line break
+        row.endRecord(batch, sink, summary);
+        if (row.columns == null) {
+            throw new IllegalArgumentException("CSV body has no header line");
+        }
+        flush(batch, sink);
+    }
+
+    private static void addRow(CharSequence timestamp, boolean valid, float[] values, MeasurementBatch batch,
+                               Consumer<MeasurementBatch> sink, IngestSummary summary) {
+        if (timestamp == null || !valid) {
+            summary.incrementRejected();
+            return;
+        }
+        long epochMillis;
+        try {
+            epochMillis = TimestampCodec.parseEpochMillis(timestamp);
+        } catch (DateTimeParseException e) {
+            summary.incrementRejected();
+            return;
+        }
+        batch.add(epochMillis,
+                values[MetricType.TEMPERATURE.ordinal()],
+                values[MetricType.DEW_POINT.ordinal()],
+                values[MetricType.PRECIPITATION.ordinal()]);
+        summary.incrementAccepted();
+        if (batch.isFull()) {
+            flush(batch, sink);
+        }
+    }
+
+    private static void flush(MeasurementBatch batch, Consumer<MeasurementBatch> sink) {
+        if (batch.size() > 0) {
+            sink.accept(batch);
+            batch.clear();
+        }
+    }
+
+    private static float readFloat(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+            return parser.getFloatValue();
+        }
+        if (token == JsonToken.VALUE_STRING) {
+            return parseFloat(parser.getText());
+        }
+        parser.skipChildren();
+        return Float.NaN;
+    }
+
+    private static float parseFloat(CharSequence text) {
+        try {
+            return Float.parseFloat(text.toString());
+        } catch (NumberFormatException e) {
+            return Float.NaN;
+        }
+    }
+
+    private static void clear(float[] values) {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 0.0f;
+        }
+    }
+}
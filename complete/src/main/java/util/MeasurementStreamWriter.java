@@ -0,0 +1,91 @@
+package util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import model.Metrics;
+import store.MeasurementStore;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes measurements to an output stream as they are visited, used to stream range exports
+ * without collecting the rows first. Write failures surface as UncheckedIOException from visit.
+ */
+public abstract class MeasurementStreamWriter implements MeasurementStore.MeasurementVisitor {
+
+    /**
+     * One JSON object per line with the same fields as GET /measurements/{timestamp}
+     */
+    public static MeasurementStreamWriter ndjson(JsonFactory jsonFactory, OutputStream outputStream) throws IOException {
+        JsonGenerator generator = jsonFactory.createGenerator(outputStream);
+        generator.setRootValueSeparator(null); // rows are terminated by a line break instead
+        char[] timestampBuffer = new char[TimestampCodec.MAX_LENGTH];
+        return new MeasurementStreamWriter() {
+            @Override
+            protected void write(long timestamp, Metrics metrics) throws IOException {
+                generator.writeStartObject();
+                generator.writeFieldName("timestamp");
+                generator.writeString(timestampBuffer, 0, TimestampCodec.formatTo(timestamp, timestampBuffer, 0));
+                generator.writeNumberField("temperature", metrics.getTemperature());
+                generator.writeNumberField("dewPoint", metrics.getDewPoint());
+                generator.writeNumberField("precipitation", metrics.getPrecipation());
+                generator.writeEndObject();
+                generator.writeRaw('\n');
+            }
+
+            @Override
+            public void finish() throws IOException {
+                generator.flush();
+            }
+        };
+    }
+
+    /**
+     * Comma separated rows after a header line, in the column layout accepted by the CSV ingest
+     */
+    public static MeasurementStreamWriter csv(OutputStream outputStream) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        writer.write("timestamp,temperature,dewPoint,precipitation\n");
+        char[] timestampBuffer = new char[TimestampCodec.MAX_LENGTH];
+        return new MeasurementStreamWriter() {
+            @Override
+            protected void write(long timestamp, Metrics metrics) throws IOException {
+                writer.write(timestampBuffer, 0, TimestampCodec.formatTo(timestamp, timestampBuffer, 0));
+                writer.write(',');
+                writer.write(Float.toString(metrics.getTemperature()));
+                writer.write(',');
+                writer.write(Float.toString(metrics.getDewPoint()));
+                writer.write(',');
+                writer.write(Float.toString(metrics.getPrecipation()));
+                writer.write('\n');
+            }
+
+            @Override
+            public void finish() throws IOException {
+                writer.flush();
+            }
+        };
+    }
+
+    @Override
+    public void visit(long timestamp, Metrics metrics) {
+        try {
+            write(timestamp, metrics);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    protected abstract void write(long timestamp, Metrics metrics) throws IOException;
+
+    /**
+     * Flushes buffered rows, the underlying stream is left open
+     */
+    public abstract void finish() throws IOException;
+}
@@ -0,0 +1,186 @@
+package util;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+
+/**
+ * Converts between API timestamps and epoch milliseconds (UTC).
+ * The layout the API writes, yyyy-MM-dd'T'HH:mm:ss.SSSZ, is parsed and formatted character by character without
+ * creating any objects. Other ISO variants (no or a different number of fraction digits, numeric offsets) and
+ * out of range fields go through cached formatters. Offsets are applied, so every representation of an instant
+ * parses to the same key; a timestamp without an offset is taken as UTC.
+ */
+public final class TimestampCodec {
+
+    /**
+     * Length of a timestamp in the API layout
+     */
+    public static final int LENGTH = 24;
+
+    /**
+     * Buffer size that fits any timestamp formatTo can produce, years beyond 9999 take more than four digits
+     */
+    public static final int MAX_LENGTH = 32;
+
+    private static final DateTimeFormatter PARSER = new DateTimeFormatterBuilder()
+            .appendPattern("yyyy-MM-dd'T'HH:mm:ss")
+            .optionalStart().appendFraction(ChronoField.NANO_OF_SECOND, 0, 9, true).optionalEnd()
+            .appendPattern("[XXX][X]")
+            .toFormatter();
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS");
+
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+    private static final long DAYS_0000_TO_1970 = 719528L;
+
+    private TimestampCodec() {
+    }
+
+    /**
+     * Parses a timestamp to epoch milliseconds, throws DateTimeParseException if it is not an ISO date time
+     */
+    public static long parseEpochMillis(CharSequence text) {
+        if (text.length() == LENGTH && text.charAt(4) == '-' && text.charAt(7) == '-' && text.charAt(10) == 'T'
+                && text.charAt(13) == ':' && text.charAt(16) == ':' && text.charAt(19) == '.' && text.charAt(23) == 'Z') {
+            int year = digits(text, 0, 4);
+            int month = digits(text, 5, 7);
+            int day = digits(text, 8, 10);
+            int hour = digits(text, 11, 13);
+            int minute = digits(text, 14, 16);
+            int second = digits(text, 17, 19);
+            int millis = digits(text, 20, 23);
+            if (year >= 1 && month >= 1 && month <= 12 && day >= 1 && day <= lengthOfMonth(year, month)
+                    && hour >= 0 && hour <= 23 && minute >= 0 && minute <= 59 && second >= 0 && second <= 59
+                    && millis >= 0) {
+                return epochDay(year, month, day) * MILLIS_PER_DAY
+                        + ((hour * 60 + minute) * 60 + second) * 1000L + millis;
+            }
+        }
+        // anything unusual, including invalid input, gets the exact java.time semantics and error
+        TemporalAccessor parsed = PARSER.parseBest(text, OffsetDateTime::from, LocalDateTime::from);
+        if (parsed instanceof OffsetDateTime) {
+            return ((OffsetDateTime) parsed).toInstant().toEpochMilli();
+        }
+        return ((LocalDateTime) parsed).toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    /**
+     * Formats epoch milliseconds in the API layout
+     */
+    public static String format(long epochMillis) {
+        char[] buffer = new char[MAX_LENGTH];
+        return new String(buffer, 0, formatTo(epochMillis, buffer, 0));
+    }
+
+    /**
+     * Writes epoch milliseconds in the API layout to the buffer, which needs MAX_LENGTH free chars after offset,
+     * and returns the number of chars written
+     */
+    public static int formatTo(long epochMillis, char[] buffer, int offset) {
+        long epochDay = Math.floorDiv(epochMillis, MILLIS_PER_DAY);
+        int millisOfDay = (int) Math.floorMod(epochMillis, MILLIS_PER_DAY);
+
+        // civil date from day count, see LocalDate.ofEpochDay
+        long zeroDay = epochDay + DAYS_0000_TO_1970 - 60;
+        long adjust = 0;
+        if (zeroDay < 0) {
+            long adjustCycles = (zeroDay + 1) / 146097 - 1;
+            adjust = adjustCycles * 400;
+            zeroDay += -adjustCycles * 146097;
+        }
+        long yearEstimate = (400 * zeroDay + 591) / 146097;
+        long dayOfYearEstimate = zeroDay - (365 * yearEstimate + yearEstimate / 4 - yearEstimate / 100 + yearEstimate / 400);
+        if (dayOfYearEstimate < 0) {
+            yearEstimate--;
+            dayOfYearEstimate = zeroDay - (365 * yearEstimate + yearEstimate / 4 - yearEstimate / 100 + yearEstimate / 400);
+        }
+        yearEstimate += adjust;
+        int marchDayOfYear = (int) dayOfYearEstimate;
+        int marchMonth = (marchDayOfYear * 5 + 2) / 153;
+        int month = (marchMonth + 2) % 12 + 1;
+        int day = marchDayOfYear - (marchMonth * 306 + 5) / 10 + 1;
+        long year = yearEstimate + marchMonth / 10;
+
+        if (year < 1 || year > 9999) {
+            String text = FORMATTER.format(Instant.ofEpochMilli(epochMillis).atOffset(ZoneOffset.UTC)) + "Z";
+            text.getChars(0, text.length(), buffer, offset);
+            return text.length();
+        }
+        writeDigits(buffer, offset, (int) year, 4);
+        buffer[offset + 4] = '-';
+        writeDigits(buffer, offset + 5, month, 2);
+        buffer[offset + 7] = '-';
+        writeDigits(buffer, offset + 8, day, 2);
+        buffer[offset + 10] = 'T';
+        writeDigits(buffer, offset + 11, millisOfDay / 3_600_000, 2);
+        buffer[offset + 13] = ':';
+        writeDigits(buffer, offset + 14, millisOfDay / 60_000 % 60, 2);
+        buffer[offset + 16] = ':';
+        writeDigits(buffer, offset + 17, millisOfDay / 1000 % 60, 2);
+        buffer[offset + 19] = '.';
+        writeDigits(buffer, offset + 20, millisOfDay % 1000, 3);
+        buffer[offset + 23] = 'Z';
+        return LENGTH;
+    }
+
+    /**
+     * Value of the decimal digits in [start, end) or -1 if one of them is not a digit
+     */
+    private static int digits(CharSequence text, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static void writeDigits(char[] buffer, int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return isLeapYear(year) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * Days since 1970-01-01 for a valid date with a positive year, see LocalDate.toEpochDay
+     */
+    private static long epochDay(int year, int month, int day) {
+        long total = 365L * year + (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+        if (month > 2) {
+            total--;
+            if (!isLeapYear(year)) {
+                total--;
+            }
+        }
+        return total - DAYS_0000_TO_1970;
+    }
+}
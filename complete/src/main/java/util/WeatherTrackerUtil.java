@@ -1,39 +1,41 @@
 package util;
 
 
-import model.Measurements;
-import model.StatsResponse;
-
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.Iterator;
 
 public class WeatherTrackerUtil {
+
+    private static final DateTimeFormatter LOCAL_DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS");
     
     public static LocalDateTime convertStringToLocalDate(String dateTimeStr) {
-		DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSX");
-		LocalDateTime dateTime = LocalDateTime.parse(dateTimeStr, formatter);
-		return dateTime;
+		long epochMillis = TimestampCodec.parseEpochMillis(dateTimeStr);
+		return LocalDateTime.ofEpochSecond(Math.floorDiv(epochMillis, 1000L),
+				(int) Math.floorMod(epochMillis, 1000L) * 1_000_000, ZoneOffset.UTC);
     }
     
     //2015-09-01T16:30:00.000Z
     public static String convertLocalDateToString(LocalDateTime timestamp) {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS");
-        String formatDateTime = timestamp.format(formatter) + "Z";
+        String formatDateTime = timestamp.format(LOCAL_DATE_TIME_FORMATTER) + "Z";
         return formatDateTime;
     }
     
-    public static void sortMeasurementList(ArrayList<Measurements> measurementList) {
-    	Collections.sort(measurementList, new Comparator<Measurements>() {
-    		@Override
-    	    public int compare(Measurements m1, Measurements m2) {
-    	        return m1.getTimestamp().compareTo(m2.getTimestamp());
-    	    }
-    	});
+    public static long convertStringToEpochMillis(String dateTimeStr) {
+        return TimestampCodec.parseEpochMillis(dateTimeStr);
+    }
+
+    public static long convertLocalDateTimeToEpochMillis(LocalDateTime dateTime) {
+        return dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    public static String convertEpochMillisToString(long epochMillis) {
+        return TimestampCodec.format(epochMillis);
+    }
+
+    public static long convertLocalDateToEpochMillis(LocalDate date) {
+        return convertLocalDateTimeToEpochMillis(date.atStartOfDay());
     }
     
     public static LocalDate convertStringToLocalDateTimeToLocalDate(String timestamp) {
@@ -41,14 +43,4 @@ public class WeatherTrackerUtil {
     	LocalDate fromDateLt = LocalDate.of(fromDateLdt.getYear(), fromDateLdt.getMonthValue(), fromDateLdt.getDayOfMonth());
     	return fromDateLt;
     }
-    
-    public static void removeItemIfNull(ArrayList<StatsResponse> statsResponse) {
-    	Iterator<StatsResponse> statsIterator = statsResponse.iterator();
-    	while(statsIterator.hasNext()) {
-    		StatsResponse resp = statsIterator.next();
-    		if(resp.getValue() == 0) {
-    			statsIterator.remove();
-    		}
-    	}
-    }
 }
\ No newline at end of file
@@ -15,40 +15,301 @@
  */
 package hello;
 
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.time.Instant;
+
+import model.Metrics;
+import org.junit.After;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import service.MeasurementService;
+import store.MeasurementBatch;
+
+import static org.mockito.AdditionalAnswers.delegatesTo;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest
 @AutoConfigureMockMvc
+@AutoConfigureObservability // metrics export, and with it /actuator/prometheus, is off in tests otherwise
 public class MeasurementControllerTests {
 
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private MeasurementController measurementController;
+
+    @Autowired
+    private MeasurementService measurementService;
+
+    @After
+    public void tearDown() {
+        ReflectionTestUtils.setField(measurementController, "measurementService", measurementService);
+    }
+
+    /**
+     * Routes the controller's service calls through a mock delegating to the real service, for verifying them
+     */
+    private MeasurementService spyOnService() {
+        MeasurementService spy = mock(MeasurementService.class, delegatesTo(measurementService));
+        ReflectionTestUtils.setField(measurementController, "measurementService", spy);
+        return spy;
+    }
+
+    @Test
+    public void jsonBatchShouldReportEveryItemAndStoreTheValidOnesInOneCall() throws Exception {
+        MeasurementService spy = spyOnService();
+
+        this.mockMvc.perform(post("/measurements/batch").contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"timestamp\": \"2011-01-01T00:00:00.000Z\", \"temperature\": 1.5},"
+                        + "{\"timestamp\": \"not a timestamp\", \"temperature\": 2.5},"
+                        + "{\"timestamp\": \"2011-01-01T00:02:00.000Z\", \"temperature\": \"warm\"},"
+                        + "{\"temperature\": 3.5},"
+                        + "{\"timestamp\": \"2011-01-01T00:04:00.000Z\", \"dewPoint\": 4.5}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(5)))
+                .andExpect(jsonPath("$[*].status").value(contains(201, 400, 404, 400, 201)))
+                .andExpect(jsonPath("$[1].timestamp").value("not a timestamp"))
+                .andExpect(jsonPath("$[3].index").value(3))
+                .andExpect(jsonPath("$[3].timestamp").value(nullValue()));
+
+        verify(spy, times(1)).addMeasurements(any(long[].class), any(Metrics[].class));
+        this.mockMvc.perform(get("/measurements/2011-01-01")).andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].temperature").value(1.5))
+                .andExpect(jsonPath("$[1].dewPoint").value(4.5));
+    }
+
+    @Test
+    public void ndjsonBatchShouldSkipBlankLinesAndRejectMalformedOnes() throws Exception {
+        MeasurementService spy = spyOnService();
+
+        this.mockMvc.perform(post("/measurements/batch").contentType("application/x-ndjson")
+                .content("{\"timestamp\": \"2011-01-02T00:00:00.000Z\", \"temperature\": 1.5}\n"
+                        + "\n"
+                        + "   \r\n"
+                        + "{\"timestamp\": \"2011-01-02T00:01:00.000Z\", \"temperature\": \r\n"
+                        + "{\"timestamp\": \"2011-01-02T00:02:00.000Z\", \"precipitation\": \"none\"}\r\n"
+                        + "{\"timestamp\": \"2011-01-02T00:03:00.000Z\", \"precipitation\": 0.5}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(4)))
+                .andExpect(jsonPath("$[*].index").value(contains(0, 1, 2, 3)))
+                .andExpect(jsonPath("$[*].status").value(contains(201, 400, 404, 201)));
+
+        verify(spy, times(1)).addMeasurements(any(long[].class), any(Metrics[].class));
+        this.mockMvc.perform(get("/measurements/2011-01-02")).andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[1].precipitation").value(0.5));
+    }
+
+    @Test
+    public void batchWithoutValidItemsShouldNotCallTheStore() throws Exception {
+        MeasurementService spy = spyOnService();
+
+        this.mockMvc.perform(post("/measurements/batch").contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"timestamp\": \"2011-01-03\"}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status").value(400));
+
+        verify(spy, times(0)).addMeasurements(any(long[].class), any(Metrics[].class));
+    }
+
+    @Test
+    public void createdMeasurementShouldBeReturnedByTimestampAndByDate() throws Exception {
+
+        this.mockMvc.perform(post("/measurements").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"timestamp\": \"2010-02-03T04:05:00.000Z\", \"temperature\": 21.5, \"dewPoint\": 11.5, \"precipitation\": 0.5}"))
+                .andExpect(status().isCreated());
+
+        this.mockMvc.perform(get("/measurements/2010-02-03T04:05:00.000Z")).andDo(print()).andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].temperature").value(21.5))
+                .andExpect(jsonPath("$[0].dewPoint").value(11.5));
+
+        this.mockMvc.perform(get("/measurements/2010-02-03")).andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].precipitation").value(0.5));
+    }
+
+    @Test
+    public void ndjsonStreamShouldCountAcceptedAndRejectedRows() throws Exception {
+
+        this.mockMvc.perform(post("/measurements/stream").contentType("application/x-ndjson")
+                .content("{\"timestamp\": \"2012-01-01T00:00:00.000Z\", \"temperature\": 1.5}\n"
+                        + "{\"timestamp\": \"yesterday\", \"temperature\": 2.5}\n"
+                        + "{\"timestamp\": \"2012-01-01T00:02:00.000Z\", \"dewPoint\": \"damp\"}\n"
+                        + "{\"timestamp\": \"2012-01-01T00:03:00.000Z\", \"precipitation\": \"0.5\", \"station\": {\"id\": 7}}\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accepted").value(2))
+                .andExpect(jsonPath("$.rejected").value(2));
+
+        this.mockMvc.perform(get("/measurements/2012-01-01")).andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[1].precipitation").value(0.5));
+    }
+
     @Test
-    public void noParamGreetingShouldReturnDefaultMessage() throws Exception {
+    public void ndjsonStreamWithObjectTimestampShouldRejectOnlyThatRow() throws Exception {
+
+        this.mockMvc.perform(post("/measurements/stream").contentType("application/x-ndjson")
+                .content("{\"timestamp\": {\"timestamp\": \"2014-01-01T00:00:00.000Z\", \"temperature\": 5}, \"temperature\": 1}\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accepted").value(0))
+                .andExpect(jsonPath("$.rejected").value(1));
+
+        this.mockMvc.perform(get("/measurements/2014-01-01")).andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void ndjsonStreamWithArrayTimestampShouldRejectOnlyThatRow() throws Exception {
+
+        this.mockMvc.perform(post("/measurements/stream").contentType("application/x-ndjson")
+                .content("{\"timestamp\": [\"2014-01-02T00:00:00.000Z\", {\"temperature\": 5}], \"temperature\": 1}\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accepted").value(0))
+                .andExpect(jsonPath("$.rejected").value(1));
+
+        this.mockMvc.perform(get("/measurements/2014-01-02")).andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void malformedNdjsonStreamShouldReturnBadRequestAndKeepEarlierRows() throws Exception {
+
+        this.mockMvc.perform(post("/measurements/stream").contentType("application/x-ndjson")
+                .content("{\"timestamp\": \"2012-01-02T00:00:00.000Z\", \"temperature\": 1.5}\n"
+                        + "{\"timestamp\": \"2012-01-02T00:01:00.000Z\", \"temperature\": 2.5}\n"
+                        + "{\"timestamp\": \"2012-01-02T00:02:00.000Z\", \"temperature\": ]\n"
+                        + "{\"timestamp\": \"2012-01-02T00:03:00.000Z\", \"temperature\": 3.5}\n"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.accepted").value(2));
+
+        this.mockMvc.perform(get("/measurements/2012-01-02")).andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)));
+    }
+
+    @Test
+    public void csvStreamShouldMapColumnsByHeaderAndFlushFullBatches() throws Exception {
+        MeasurementService spy = spyOnService();
+        int rows = 2 * 4096 + 100; // two full store writes and a partial last one
+        long first = Instant.parse("2012-01-03T00:00:00Z").toEpochMilli();
+        StringBuilder body = new StringBuilder("station,precipitation,timestamp,temperature\r\n");
+        for (int i = 0; i < rows; i++) {
+            body.append("s1,0.5,").append(Instant.ofEpochMilli(first + i * 10_000L)).append(',').append(i % 30).append("\r\n");
+        }
+        body.append("s1,0.5,not a timestamp,1\n");
+        body.append("s1,wet,2012-01-03T23:59:59Z,1"); // no line break after the last row
+
+        this.mockMvc.perform(post("/measurements/stream").contentType("text/csv").content(body.toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accepted").value(rows))
+                .andExpect(jsonPath("$.rejected").value(2));
+
+        verify(spy, times(3)).addMeasurements(any(MeasurementBatch.class));
+        this.mockMvc.perform(get("/measurements/2012-01-03")).andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(rows)))
+                .andExpect(jsonPath("$[31].temperature").value(1.0))
+                .andExpect(jsonPath("$[31].precipitation").value(0.5));
+    }
+
+    @Test
+    public void csvStreamWithoutTimestampColumnShouldReturnBadRequest() throws Exception {
+        MeasurementService spy = spyOnService();
+
+        this.mockMvc.perform(post("/measurements/stream").contentType("text/csv")
+                .content("time,temperature\n2012-01-04T00:00:00.000Z,1.5\n"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.accepted").value(0));
+
+        verify(spy, times(0)).addMeasurements(any(MeasurementBatch.class));
+    }
+
+    @Test
+    public void exportShouldStreamTheRangeAsNdjsonByDefaultAndAsCsvOnRequest() throws Exception {
+        this.mockMvc.perform(post("/measurements/batch").contentType("application/x-ndjson")
+                .content("{\"timestamp\": \"2013-01-01T00:00:00.000Z\", \"temperature\": 1.5}\n"
+                        + "{\"timestamp\": \"2013-01-01T00:01:00.000Z\", \"temperature\": 2.5, \"dewPoint\": 1.0}\n"
+                        + "{\"timestamp\": \"2013-01-01T00:02:00.000Z\", \"temperature\": 3.5, \"precipitation\": 0.5}\n"
+                        + "{\"timestamp\": \"2013-01-01T00:03:00.000Z\", \"temperature\": 4.5}\n"))
+                .andExpect(status().isOk());
+
+        // from is inclusive and to is exclusive
+        MvcResult ndjson = this.mockMvc.perform(get("/measurements")
+                .param("from", "2013-01-01T00:01:00.000Z").param("to", "2013-01-01T00:03:00.000Z"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        ndjson.getAsyncResult(10_000); // the body is written on the task executor
+        this.mockMvc.perform(asyncDispatch(ndjson))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "application/x-ndjson"))
+                .andExpect(content().string(
+                        "{\"timestamp\":\"2013-01-01T00:01:00.000Z\",\"temperature\":2.5,\"dewPoint\":1.0,\"precipitation\":0.0}\n"
+                        + "{\"timestamp\":\"2013-01-01T00:02:00.000Z\",\"temperature\":3.5,\"dewPoint\":0.0,\"precipitation\":0.5}\n"));
+
+        MvcResult csv = this.mockMvc.perform(get("/measurements").accept("text/csv")
+                .param("from", "2013-01-01T00:00:00.000Z").param("to", "2013-01-01T00:02:00.000Z"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        csv.getAsyncResult(10_000); // the body is written on the task executor
+        this.mockMvc.perform(asyncDispatch(csv))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "text/csv"))
+                .andExpect(content().string("timestamp,temperature,dewPoint,precipitation\n"
+                        + "2013-01-01T00:00:00.000Z,1.5,0.0,0.0\n"
+                        + "2013-01-01T00:01:00.000Z,2.5,1.0,0.0\n"));
+    }
+
+    @Test
+    public void exportWithBadBoundShouldReturnBadRequest() throws Exception {
+
+        this.mockMvc.perform(get("/measurements").param("from", "2013-01-01").param("to", "2013-01-02T00:00:00.000Z"))
+                .andExpect(status().isBadRequest());
+        this.mockMvc.perform(get("/measurements").param("from", "2013-01-01T00:00:00.000Z").param("to", "tomorrow"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void statsShouldBeMeteredAndServedInPrometheusFormat() throws Exception {
+
+        this.mockMvc.perform(get("/stats").param("metric", "temperature").param("stat", "max")
+                .param("fromDateTime", "2010-03-01T00:00:00.000Z").param("toDateTime", "2010-03-02T00:00:00.000Z"))
+                .andExpect(status().isOk());
 
-        this.mockMvc.perform(get("/greeting")).andDo(print()).andExpect(status().isOk())
-                .andExpect(jsonPath("$.content").value("Hello, World!"));
+        this.mockMvc.perform(get("/actuator/prometheus")).andExpect(status().isOk())
+                .andExpect(content().string(containsString("measurement_stats_phase_seconds_count{phase=\"aggregation\",}")))
+                .andExpect(content().string(containsString("measurement_stats_cache_gets_total{result=\"miss\",}")))
+                .andExpect(content().string(containsString("measurement_store_size_rows")))
+                .andExpect(content().string(containsString("http_server_requests_seconds_bucket")));
     }
 
     @Test
-    public void paramGreetingShouldReturnTailoredMessage() throws Exception {
+    public void unknownTimestampShouldReturnNotFound() throws Exception {
 
-        this.mockMvc.perform(get("/greeting").param("name", "Spring Community"))
-                .andDo(print()).andExpect(status().isOk())
-                .andExpect(jsonPath("$.content").value("Hello, Spring Community!"));
+        this.mockMvc.perform(get("/measurements/2010-02-04T00:00:00.000Z")).andExpect(status().isNotFound());
     }
 
 }
@@ -0,0 +1,193 @@
+package service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import model.MetricAccumulator;
+import model.MetricType;
+import model.Metrics;
+import model.StatsRequest;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import store.impl.LiveWindows;
+import store.impl.NoOpMeasurementLog;
+import store.impl.RollupIndex;
+import store.impl.SkipListMeasurementStore;
+import util.MeasurementETag;
+
+public class MeasurementServiceImplTests {
+
+    private static final float UNCHANGED = Float.MIN_VALUE;
+
+    private final SkipListMeasurementStore store = new SkipListMeasurementStore();
+
+    private final RollupIndex rollupIndex = new RollupIndex();
+
+    private final LiveWindows liveWindows = new LiveWindows("PT5M", 60);
+
+    private final StripedLock writeLocks = new StripedLock();
+
+    private final SnapshotRegistry snapshotRegistry = new SnapshotRegistry();
+
+    private final StatsEngineImpl statsEngine = new StatsEngineImpl();
+
+    private final StatsCache statsCache = new StatsCache(16, 300);
+
+    private final MeasurementMeters measurementMeters = new MeasurementMeters(new SimpleMeterRegistry(), store);
+
+    private final MeasurementServiceImpl measurementService = new MeasurementServiceImpl();
+
+    @Before
+    public void setUp() {
+        ReflectionTestUtils.setField(rollupIndex, "measurementStore", store);
+        ReflectionTestUtils.setField(snapshotRegistry, "measurementStore", store);
+        ReflectionTestUtils.setField(snapshotRegistry, "writeLocks", writeLocks);
+        ReflectionTestUtils.setField(measurementService, "writeLocks", writeLocks);
+        ReflectionTestUtils.setField(measurementService, "snapshotRegistry", snapshotRegistry);
+        ReflectionTestUtils.setField(measurementService, "measurementStore", store);
+        ReflectionTestUtils.setField(measurementService, "rollupIndex", rollupIndex);
+        ReflectionTestUtils.setField(liveWindows, "measurementStore", store);
+        ReflectionTestUtils.setField(measurementService, "liveWindows", liveWindows);
+        ReflectionTestUtils.setField(measurementService, "measurementLog", new NoOpMeasurementLog());
+        ReflectionTestUtils.setField(statsEngine, "rollupIndex", rollupIndex);
+        ReflectionTestUtils.setField(statsEngine, "snapshotRegistry", snapshotRegistry);
+        ReflectionTestUtils.setField(statsEngine, "statsForkJoinPool", new StatsForkJoinPool(2, 7));
+        ReflectionTestUtils.setField(measurementService, "statsEngine", statsEngine);
+        ReflectionTestUtils.setField(measurementService, "statsCache", statsCache);
+        ReflectionTestUtils.setField(statsEngine, "measurementMeters", measurementMeters);
+        ReflectionTestUtils.setField(measurementService, "measurementMeters", measurementMeters);
+        measurementService.addMeasurement(1000L, new Metrics(1f, 1f, 1f));
+    }
+
+    @Test
+    public void concurrentPatchesOfDifferentFieldsShouldNotLoseUpdates() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Future<?> temperature = executor.submit(() -> {
+                for (int i = 1; i <= 20_000; i++) {
+                    measurementService.patchMeasurement(1000L, new Metrics(i, UNCHANGED, UNCHANGED), null);
+                }
+            });
+            Future<?> dewPoint = executor.submit(() -> {
+                for (int i = 1; i <= 20_000; i++) {
+                    measurementService.patchMeasurement(1000L, new Metrics(UNCHANGED, i, UNCHANGED), null);
+                }
+            });
+            Future<?> precipitation = executor.submit(() -> {
+                for (int i = 1; i <= 20_000; i++) {
+                    measurementService.patchMeasurement(1000L, new Metrics(UNCHANGED, UNCHANGED, i), null);
+                }
+            });
+            temperature.get();
+            dewPoint.get();
+            precipitation.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        Metrics metrics = store.get(1000L);
+        assertEquals(20_000f, metrics.getTemperature(), 0f);
+        assertEquals(20_000f, metrics.getDewPoint(), 0f);
+        assertEquals(20_000f, metrics.getPrecipation(), 0f);
+    }
+
+    @Test
+    public void snapshotShouldKeepRowsAsTheyWereWhenOpened() {
+        measurementService.addMeasurement(3000L, new Metrics(3f, 3f, 3f));
+        try (ReadSnapshot snapshot = snapshotRegistry.open(0L, 5000L)) {
+            measurementService.addMeasurement(2000L, new Metrics(2f, 2f, 2f));
+            measurementService.patchMeasurement(1000L, new Metrics(10f, UNCHANGED, UNCHANGED), null);
+            measurementService.deleteMeasurement(3000L);
+
+            List<String> rows = new ArrayList<>();
+            snapshot.scan(0L, 5000L, (timestamp, metrics) -> rows.add(timestamp + "=" + metrics.getTemperature()));
+            assertEquals(Arrays.asList("1000=1.0", "3000=3.0"), rows);
+
+            MetricAccumulator[] accumulators = new MetricAccumulator[MetricType.values().length];
+            accumulators[MetricType.TEMPERATURE.ordinal()] = new MetricAccumulator();
+            snapshot.aggregate(0L, 5000L, new MetricType[] { MetricType.TEMPERATURE }, accumulators);
+            assertEquals(3f, accumulators[MetricType.TEMPERATURE.ordinal()].getMax(), 0f);
+        }
+
+        List<Long> live = new ArrayList<>();
+        measurementService.exportMeasurements(0L, 5000L, (timestamp, metrics) -> live.add(timestamp));
+        assertEquals(Arrays.asList(1000L, 2000L), live);
+    }
+
+    @Test
+    public void snapshotShouldOnlyKeepBeforeImagesOfItsRange() {
+        try (ReadSnapshot snapshot = snapshotRegistry.open(0L, 5000L)) {
+            measurementService.addMeasurement(9000L, new Metrics(9f, 9f, 9f));
+            measurementService.addMeasurements(new long[] { 5000L, 6000L }, new Metrics[] { new Metrics(), new Metrics() });
+            assertEquals(0, snapshotRegistry.getUndoLog().size());
+
+            measurementService.addMeasurement(2000L, new Metrics(2f, 2f, 2f));
+            assertEquals(Arrays.asList(2000L), new ArrayList<>(snapshotRegistry.getUndoLog().keySet()));
+        }
+        assertEquals(0, snapshotRegistry.getUndoLog().size());
+    }
+
+    @Test
+    public void snapshotOverUndoBudgetShouldExpireInsteadOfGrowing() {
+        ReflectionTestUtils.setField(snapshotRegistry, "maxUndoEntries", 2);
+        try (ReadSnapshot snapshot = snapshotRegistry.open(0L, 5000L)) {
+            for (int i = 1; i <= 3; i++) {
+                measurementService.patchMeasurement(1000L, new Metrics(i, UNCHANGED, UNCHANGED), null);
+            }
+            assertEquals(0, snapshotRegistry.getUndoLog().size());
+            try {
+                snapshot.scan(0L, 5000L, (timestamp, metrics) -> { });
+                fail("an expired snapshot should not be readable");
+            } catch (IllegalStateException expected) {
+            }
+        }
+
+        // later snapshots and writes are not affected
+        try (ReadSnapshot snapshot = snapshotRegistry.open(0L, 5000L)) {
+            measurementService.patchMeasurement(1000L, new Metrics(4f, UNCHANGED, UNCHANGED), null);
+            List<Float> rows = new ArrayList<>();
+            snapshot.scan(0L, 5000L, (timestamp, metrics) -> rows.add(metrics.getTemperature()));
+            assertEquals(Arrays.asList(3f), rows);
+        }
+    }
+
+    @Test
+    public void conditionalWritesShouldRequireCurrentEntityTag() {
+        String etag = MeasurementETag.of(store.get(1000L));
+
+        assertEquals(204, measurementService.patchMeasurement(1000L, new Metrics(2f, UNCHANGED, UNCHANGED), etag));
+        assertEquals(412, measurementService.patchMeasurement(1000L, new Metrics(3f, UNCHANGED, UNCHANGED), etag));
+        assertEquals(412, measurementService.updateMeasurement(1000L, new Metrics(3f, 3f, 3f), etag));
+        assertEquals(204, measurementService.updateMeasurement(1000L, new Metrics(3f, 3f, 3f), "\"x\", " + MeasurementETag.of(store.get(1000L))));
+        assertEquals(204, measurementService.patchMeasurement(1000L, new Metrics(4f, UNCHANGED, UNCHANGED), "*"));
+        assertEquals(404, measurementService.patchMeasurement(2000L, new Metrics(4f, UNCHANGED, UNCHANGED), etag));
+        assertEquals(4f, store.get(1000L).getTemperature(), 0f);
+    }
+
+    @Test
+    public void cachedStatsShouldOnlyBeDroppedByWritesIntoTheirRange() {
+        StatsRequest request = new StatsRequest(new ArrayList<>(Arrays.asList("temperature")),
+                new ArrayList<>(Arrays.asList("max")),
+                LocalDateTime.of(1970, 1, 1, 0, 0, 0), LocalDateTime.of(1970, 1, 1, 0, 0, 5));
+        assertEquals(1f, measurementService.getMeasurementStatistics(request).get(0).getValue(), 0f);
+
+        measurementService.addMeasurement(10_000L, new Metrics(9f, 9f, 9f));
+        assertEquals(1f, measurementService.getMeasurementStatistics(request).get(0).getValue(), 0f);
+        assertEquals(1, statsCache.getHits());
+
+        measurementService.addMeasurement(2000L, new Metrics(5f, 5f, 5f));
+        assertEquals(5f, measurementService.getMeasurementStatistics(request).get(0).getValue(), 0f);
+        assertEquals(1, statsCache.getHits());
+        assertEquals(1, statsCache.getInvalidations());
+    }
+}
@@ -0,0 +1,85 @@
+package service.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+import model.StatsResponse;
+import org.junit.Test;
+
+public class StatsCacheTests {
+
+    private static final long DAY = 86_400_000L;
+
+    private final StatsCache statsCache = new StatsCache(3, 300);
+
+    @Test
+    public void writesShouldOnlyDropEntriesCoveringThemOnEveryLevel() {
+        StatsCache.Key day = key(10 * DAY, 11 * DAY);
+        StatsCache.Key decade = key(0, 3650 * DAY);
+        StatsCache.Key later = key(4000 * DAY, 4001 * DAY);
+        get(day);
+        get(decade);
+        get(later);
+
+        statsCache.invalidate(12 * DAY, 12 * DAY); // only inside the decade
+        get(day);
+        get(later);
+        assertEquals(1, statsCache.getInvalidations());
+        assertEquals(2, statsCache.getHits());
+
+        statsCache.invalidate(new long[] { 11 * DAY - 1, 3999 * DAY }, 2); // the day, up to just before later
+        get(later);
+        assertEquals(2, statsCache.getInvalidations());
+        assertEquals(3, statsCache.getHits());
+        assertEquals(1, statsCache.size());
+
+        statsCache.invalidate(4001 * DAY, 4001 * DAY); // to is exclusive
+        assertEquals(1, statsCache.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryShouldBeEvicted() {
+        get(key(0, DAY));
+        get(key(DAY, 2 * DAY));
+        get(key(2 * DAY, 3 * DAY));
+        get(key(0, DAY));
+        get(key(3 * DAY, 4 * DAY));
+
+        assertEquals(1, statsCache.getEvictions());
+        assertEquals(3, statsCache.size());
+        get(key(0, DAY));
+        assertEquals(2, statsCache.getHits());
+        get(key(DAY, 2 * DAY));
+        assertEquals(2, statsCache.getHits());
+
+        // the evicted entry is out of the index as well
+        statsCache.invalidate(0, 10 * DAY);
+        assertEquals(0, statsCache.size());
+        assertEquals(3, statsCache.getInvalidations());
+    }
+
+    @Test
+    public void resultOfRangeWrittenWhileComputingShouldNotBeCached() {
+        StatsCache.Key key = key(0, DAY);
+        statsCache.get(key, k -> {
+            statsCache.invalidate(DAY / 2, DAY / 2);
+            return new ArrayList<>();
+        });
+        get(key);
+        get(key);
+
+        assertEquals(1, statsCache.getInvalidations());
+        assertEquals(1, statsCache.getHits());
+    }
+
+    private void get(StatsCache.Key key) {
+        statsCache.get(key, k -> new ArrayList<>(Collections.singletonList(new StatsResponse("temperature", "max", 1f))));
+    }
+
+    private static StatsCache.Key key(long fromInclusive, long toExclusive) {
+        return new StatsCache.Key(Collections.singletonList("temperature"), Collections.singletonList("max"),
+                fromInclusive, toExclusive);
+    }
+}
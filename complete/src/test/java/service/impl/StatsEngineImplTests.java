@@ -0,0 +1,217 @@
+package service.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import model.Metrics;
+import model.Series;
+import model.SeriesPoint;
+import model.StatsResponse;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import store.impl.RollupIndex;
+import store.impl.SkipListMeasurementStore;
+
+public class StatsEngineImplTests {
+
+    private final SkipListMeasurementStore store = new SkipListMeasurementStore();
+
+    private final RollupIndex rollupIndex = new RollupIndex();
+
+    private final SnapshotRegistry snapshotRegistry = new SnapshotRegistry();
+
+    private final StatsEngineImpl statsEngine = new StatsEngineImpl();
+
+    @Before
+    public void setUp() {
+        ReflectionTestUtils.setField(rollupIndex, "measurementStore", store);
+        ReflectionTestUtils.setField(snapshotRegistry, "measurementStore", store);
+        ReflectionTestUtils.setField(snapshotRegistry, "writeLocks", new StripedLock());
+        ReflectionTestUtils.setField(statsEngine, "rollupIndex", rollupIndex);
+        ReflectionTestUtils.setField(statsEngine, "snapshotRegistry", snapshotRegistry);
+        ReflectionTestUtils.setField(statsEngine, "statsForkJoinPool", new StatsForkJoinPool(4, 1));
+        ReflectionTestUtils.setField(statsEngine, "measurementMeters", new MeasurementMeters(new SimpleMeterRegistry(), store));
+        store.put(1000L, new Metrics(27.1f, 16.7f, 0f));
+        store.put(2000L, new Metrics(27.3f, 0f, 1.5f));
+        store.put(3000L, new Metrics(27.5f, 17.3f, 2.5f));
+        store.put(4000L, new Metrics(30.0f, 20.0f, 9.0f));
+    }
+
+    @Test
+    public void shouldComputeAllRequestedStatsInRequestOrder() {
+        ArrayList<StatsResponse> response = statsEngine.getStatistics(
+                Arrays.asList("temperature", "dewPoint"),
+                Arrays.asList("min", "max", "average"),
+                1000L, 4000L);
+
+        assertEquals(6, response.size());
+        assertStat(response.get(0), "temperature", "min", 27.1f);
+        assertStat(response.get(1), "temperature", "max", 27.5f);
+        assertStat(response.get(2), "temperature", "average", 27.3f);
+        assertStat(response.get(3), "dewPoint", "min", 16.7f);
+        assertStat(response.get(4), "dewPoint", "max", 17.3f);
+        assertStat(response.get(5), "dewPoint", "average", 17.0f);
+    }
+
+    @Test
+    public void shouldSkipMissingValuesAndSupportCountAndSum() {
+        ArrayList<StatsResponse> response = statsEngine.getStatistics(
+                Arrays.asList("precipitation"),
+                Arrays.asList("count", "sum", "average"),
+                1000L, 4000L);
+
+        assertEquals(3, response.size());
+        assertStat(response.get(0), "precipitation", "count", 2f);
+        assertStat(response.get(1), "precipitation", "sum", 4.0f);
+        assertStat(response.get(2), "precipitation", "average", 2.0f);
+    }
+
+    @Test
+    public void shouldLeaveOutUnknownNamesAndEmptyRanges() {
+        assertEquals(0, statsEngine.getStatistics(
+                Arrays.asList("humidity"), Arrays.asList("min"), 1000L, 4000L).size());
+        assertEquals(0, statsEngine.getStatistics(
+                Arrays.asList("temperature"), Arrays.asList("median"), 1000L, 4000L).size());
+        assertEquals(0, statsEngine.getStatistics(
+                Arrays.asList("temperature"), Arrays.asList("min"), 5000L, 6000L).size());
+    }
+
+    @Test
+    public void constantSeriesShouldHaveZeroStandardDeviation() {
+        long start = 50 * RollupIndex.DAY_MILLIS;
+        for (long timestamp = start; timestamp < start + 2 * RollupIndex.DAY_MILLIS; timestamp += 10 * 60 * 1000L) {
+            write(timestamp, new Metrics(20f, 0f, 0f));
+        }
+
+        ArrayList<StatsResponse> response = statsEngine.getStatistics(
+                Arrays.asList("temperature", "dewPoint"),
+                Arrays.asList("stddev", "average"),
+                start, start + 2 * RollupIndex.DAY_MILLIS);
+
+        assertEquals(2, response.size());
+        assertStat(response.get(0), "temperature", "stddev", 0f);
+        assertStat(response.get(1), "temperature", "average", 20f);
+
+        // a single reading as well, read row by row
+        response = statsEngine.getStatistics(Arrays.asList("dewPoint"), Arrays.asList("stddev"), 4000L, 5000L);
+        assertEquals(1, response.size());
+        assertStat(response.get(0), "dewPoint", "stddev", 0f);
+    }
+
+    @Test
+    public void rollupTiersShouldFollowWritesAndDeletes() {
+        long start = 10 * RollupIndex.DAY_MILLIS;
+        for (long timestamp = start; timestamp < start + 3 * RollupIndex.DAY_MILLIS; timestamp += 10 * 60 * 1000L) {
+            write(timestamp, new Metrics(20f, 10f, 1f));
+        }
+        write(start + RollupIndex.DAY_MILLIS + 5, new Metrics(40f, 10f, 1f));
+        write(start + 2 * RollupIndex.DAY_MILLIS + 5, new Metrics(-5f, 10f, 1f));
+        rollupIndex.beginWrite(start + 2 * RollupIndex.DAY_MILLIS + 5);
+        rollupIndex.endWrite(start + 2 * RollupIndex.DAY_MILLIS + 5, store.remove(start + 2 * RollupIndex.DAY_MILLIS + 5), null);
+
+        ArrayList<StatsResponse> response = statsEngine.getStatistics(
+                Arrays.asList("temperature"),
+                Arrays.asList("min", "max", "count"),
+                start + 1, start + 3 * RollupIndex.DAY_MILLIS - 1);
+
+        assertStat(response.get(0), "temperature", "min", 20f);
+        assertStat(response.get(1), "temperature", "max", 40f);
+        assertStat(response.get(2), "temperature", "count", 3 * 24 * 6 - 1 + 1);
+    }
+
+    @Test
+    public void percentilesShouldBeMergedFromRollupSketchesWithinRelativeAccuracy() {
+        long start = 20 * RollupIndex.DAY_MILLIS;
+        for (int i = 0; i < 2000; i++) {
+            write(start + i * 60 * 1000L, new Metrics(i % 2 == 0 ? -1f : 1000f, 0f, 0f));
+        }
+        // replacing every value takes the old ones back out of the bucket sketches
+        for (int i = 0; i < 2000; i++) {
+            write(start + i * 60 * 1000L, new Metrics(i + 1, 0f, 0f));
+        }
+
+        ArrayList<StatsResponse> response = statsEngine.getStatistics(
+                Arrays.asList("temperature"),
+                Arrays.asList("p50", "p90", "p99", "stddev", "histogram"),
+                start, start + 2000 * 60 * 1000L);
+
+        assertEquals(1000f, response.get(0).getValue(), 1000f * 0.01f);
+        assertEquals(1800f, response.get(1).getValue(), 1800f * 0.01f);
+        assertEquals(1980f, response.get(2).getValue(), 1980f * 0.01f);
+        assertStat(response.get(3), "temperature", "stddev", (float) Math.sqrt((2000.0 * 2000.0 - 1) / 12));
+        assertEquals(2000f, response.get(4).getValue(), 0f);
+        assertEquals(10, response.get(4).getHistogram().size());
+        assertEquals(200L, response.get(4).getHistogram().get(0).getCount(), 4L);
+    }
+
+    @Test
+    public void seriesShouldHaveOneValuePerNonEmptyBucket() {
+        long start = 30 * RollupIndex.DAY_MILLIS;
+        for (int i = 0; i < 6 * 30; i++) {
+            write(start + i * 60 * 1000L, new Metrics(i / 60 + 1, 0f, 0f)); // three hours, one value per hour
+        }
+        write(start + 5 * RollupIndex.HOUR_MILLIS, new Metrics(50f, 0f, 0f)); // two hours later
+
+        ArrayList<Series> hourly = statsEngine.getSeries(Arrays.asList("temperature"), Arrays.asList("average", "count"),
+                start + 30 * 60 * 1000L, start + 6 * RollupIndex.HOUR_MILLIS, RollupIndex.HOUR_MILLIS, 0);
+        assertEquals(2, hourly.size());
+        List<SeriesPoint> averages = hourly.get(0).getPoints();
+        assertEquals(Arrays.asList(1f, 2f, 3f, 50f), values(averages));
+        assertEquals("1970-01-31T00:00:00.000Z", averages.get(0).getTimestamp());
+        assertEquals(Arrays.asList(30f, 60f, 60f, 1f), values(hourly.get(1).getPoints()));
+
+        ArrayList<Series> tenMinutes = statsEngine.getSeries(Arrays.asList("temperature"), Arrays.asList("max"),
+                start, start + RollupIndex.HOUR_MILLIS, 10 * 60 * 1000L, 0);
+        assertEquals(6, tenMinutes.get(0).getPoints().size());
+
+        ArrayList<Series> raw = statsEngine.getRawSeries(Arrays.asList("temperature"),
+                start, start + 6 * RollupIndex.HOUR_MILLIS, 20);
+        List<SeriesPoint> points = raw.get(0).getPoints();
+        assertEquals(20, points.size());
+        assertEquals("1970-01-31T00:00:00.000Z", points.get(0).getTimestamp());
+        assertEquals(50f, points.get(19).getValue(), 0f);
+    }
+
+    @Test
+    public void partitionedAggregationShouldMatchSequentialAggregation() {
+        long start = 40 * RollupIndex.DAY_MILLIS + 12345L;
+        for (long timestamp = start; timestamp < start + 40 * RollupIndex.DAY_MILLIS; timestamp += 17 * 60 * 1000L) {
+            write(timestamp, new Metrics((timestamp / 1000) % 97 - 40f, 0f, (timestamp / 1000) % 13));
+        }
+        List<String> metrics = Arrays.asList("temperature", "precipitation");
+        List<String> stats = Arrays.asList("min", "max", "count", "sum", "p50", "stddev");
+        ArrayList<StatsResponse> parallel = statsEngine.getStatistics(metrics, stats, start + 5, start + 40 * RollupIndex.DAY_MILLIS - 5);
+
+        ReflectionTestUtils.setField(statsEngine, "statsForkJoinPool", new StatsForkJoinPool(1, 365));
+        ArrayList<StatsResponse> sequential = statsEngine.getStatistics(metrics, stats, start + 5, start + 40 * RollupIndex.DAY_MILLIS - 5);
+
+        assertEquals(sequential.size(), parallel.size());
+        for (int i = 0; i < sequential.size(); i++) {
+            assertStat(parallel.get(i), sequential.get(i).getMetric(), sequential.get(i).getStat(), sequential.get(i).getValue());
+        }
+    }
+
+    private static List<Float> values(List<SeriesPoint> points) {
+        List<Float> values = new ArrayList<>();
+        for (SeriesPoint point : points) {
+            values.add(point.getValue());
+        }
+        return values;
+    }
+
+    private void write(long timestamp, Metrics metrics) {
+        rollupIndex.beginWrite(timestamp);
+        rollupIndex.endWrite(timestamp, store.put(timestamp, metrics), metrics);
+    }
+
+    private void assertStat(StatsResponse statsResponse, String metric, String stat, float value) {
+        assertEquals(metric, statsResponse.getMetric());
+        assertEquals(stat, statsResponse.getStat());
+        assertEquals(value, statsResponse.getValue(), 0.001f);
+    }
+}
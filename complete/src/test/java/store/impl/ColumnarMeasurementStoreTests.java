@@ -0,0 +1,117 @@
+package store.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import model.MetricAccumulator;
+import model.MetricType;
+import model.Metrics;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class ColumnarMeasurementStoreTests {
+
+    private static final long DAY = RollupIndex.DAY_MILLIS;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ColumnarMeasurementStore store = new ColumnarMeasurementStore();
+
+    @Test
+    public void outOfOrderInsertsShouldKeepColumnsAndValidityAligned() {
+        // 200 samples inserted back to front across two chunks, every third one without a dew point
+        for (int i = 199; i >= 0; i--) {
+            store.put(i * 30_000L, new Metrics(i + 1, i % 3 == 0 ? 0f : i + 0.5f, 1f));
+        }
+
+        assertEquals(200, store.size());
+        for (int i = 0; i < 200; i++) {
+            Metrics metrics = store.get(i * 30_000L);
+            assertEquals(i + 1, metrics.getTemperature(), 0f);
+            assertEquals(i % 3 == 0 ? 0f : i + 0.5f, metrics.getDewPoint(), 0f);
+        }
+    }
+
+    @Test
+    public void removeShouldShiftRemainingSamples() {
+        for (int i = 0; i < 130; i++) {
+            store.put(i, new Metrics(i + 1, i % 2 == 0 ? 0f : 5f, 0f));
+        }
+        for (int i = 0; i < 130; i += 4) {
+            assertEquals(i + 1, store.remove(i).getTemperature(), 0f);
+        }
+
+        List<Long> visited = new ArrayList<>();
+        store.scan(0, 130, (timestamp, metrics) -> {
+            visited.add(timestamp);
+            assertEquals(timestamp + 1, metrics.getTemperature(), 0f);
+            assertEquals(timestamp % 2 == 0 ? 0f : 5f, metrics.getDewPoint(), 0f);
+        });
+        assertEquals(130 - 33, visited.size());
+        assertNull(store.get(4));
+    }
+
+    @Test
+    public void replaceShouldOnlyTouchExistingSamples() {
+        store.put(1000L, new Metrics(27.1f, 16.7f, 0f));
+
+        assertNull(store.replace(2000L, new Metrics(1f, 1f, 1f)));
+        assertEquals(27.1f, store.replace(1000L, new Metrics(28f, 0f, 2f)).getTemperature(), 0f);
+        assertEquals(0f, store.get(1000L).getDewPoint(), 0f);
+        assertEquals(2f, store.remove(1000L).getPrecipation(), 0f);
+        assertEquals(0, store.size());
+        assertNull(store.get(1000L));
+    }
+
+    @Test
+    public void sealedPartitionsShouldBeReadFromSegmentFilesUntilWritten() {
+        ReflectionTestUtils.setField(store, "segmentDirectory", folder.getRoot().getPath());
+        ReflectionTestUtils.setField(store, "hotDays", 1);
+        for (int i = 0; i < 48; i++) {
+            store.put(i * DAY / 24, new Metrics(i + 1, i % 2 == 0 ? 0f : 5f, 0f));
+        }
+        store.put(3 * DAY, new Metrics(100f, 0f, 0f));
+
+        store.sealColdPartitions(3 * DAY); // both old days were just written, so they stay on the heap
+        assertEquals(0, segmentFiles().length);
+        store.sealColdPartitions(3 * DAY);
+        assertEquals(2, segmentFiles().length);
+
+        assertEquals(49, store.size());
+        assertEquals(25f, store.get(DAY).getTemperature(), 0f);
+        assertNull(store.get(DAY + 1));
+        List<Long> visited = new ArrayList<>();
+        store.scan(DAY / 2, 3 * DAY + 1, (timestamp, metrics) -> visited.add(timestamp));
+        assertEquals(37, visited.size());
+        assertEquals(3 * DAY, (long) visited.get(36));
+
+        MetricAccumulator[] accumulators = { new MetricAccumulator(), new MetricAccumulator(), new MetricAccumulator() };
+        MetricType[] metrics = { MetricType.TEMPERATURE, MetricType.DEW_POINT, MetricType.PRECIPITATION };
+        store.aggregate(0, 3 * DAY, metrics, accumulators);
+        assertEquals(48, accumulators[MetricType.TEMPERATURE.ordinal()].getCount());
+        assertEquals(48f, accumulators[MetricType.TEMPERATURE.ordinal()].getMax(), 0f);
+        assertEquals(24, accumulators[MetricType.DEW_POINT.ordinal()].getCount());
+        assertEquals(0, accumulators[MetricType.PRECIPITATION.ordinal()].getCount());
+
+        // a write to a sealed day brings it back onto the heap
+        assertEquals(25f, store.replace(DAY, new Metrics(7f, 7f, 7f)).getTemperature(), 0f);
+        assertEquals(1, segmentFiles().length);
+        assertEquals(7f, store.get(DAY).getPrecipation(), 0f);
+        assertEquals(1f, store.get(0).getTemperature(), 0f);
+        assertEquals(49, store.size());
+        assertTrue(store.remove(0) != null);
+        assertEquals(48, store.size());
+    }
+
+    private File[] segmentFiles() {
+        return folder.getRoot().listFiles((directory, name) -> name.endsWith(".seg"));
+    }
+}
@@ -0,0 +1,112 @@
+package store.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import model.Metrics;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import store.MeasurementLog;
+
+public class FileMeasurementLogTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final SkipListMeasurementStore store = new SkipListMeasurementStore();
+
+    @Test
+    public void recoverShouldReplayLoggedWritesInOrder() throws Exception {
+        FileMeasurementLog log = openLog();
+        log.awaitDurable(log.logPut(1000L, new Metrics(27.1f, 16.7f, 0f)));
+        log.awaitDurable(log.logPut(2000L, new Metrics(28f, 17f, 1f)));
+        log.awaitDurable(log.logPut(1000L, new Metrics(29f, 18f, 2f)));
+        log.awaitDurable(log.logRemove(2000L));
+        log.close();
+
+        Map<Long, Metrics> recovered = recover(openLog());
+        assertEquals(1, recovered.size());
+        assertEquals(29f, recovered.get(1000L).getTemperature(), 0f);
+    }
+
+    @Test
+    public void recoverShouldIgnoreTornRecordAtEndOfSegment() throws Exception {
+        FileMeasurementLog log = openLog();
+        log.awaitDurable(log.logPut(1000L, new Metrics(27.1f, 16.7f, 0f)));
+        log.awaitDurable(log.logPut(2000L, new Metrics(28f, 17f, 1f)));
+        log.close();
+
+        Path segment = files("wal-")[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        Map<Long, Metrics> recovered = recover(openLog());
+        assertEquals(1, recovered.size());
+        assertTrue(recovered.containsKey(1000L));
+    }
+
+    @Test
+    public void snapshotShouldReplaceOlderSegments() throws Exception {
+        FileMeasurementLog log = openLog();
+        store.put(1000L, new Metrics(27.1f, 16.7f, 0f));
+        log.awaitDurable(log.logPut(1000L, new Metrics(27.1f, 16.7f, 0f)));
+        log.snapshot();
+        store.put(2000L, new Metrics(28f, 17f, 1f));
+        log.awaitDurable(log.logPut(2000L, new Metrics(28f, 17f, 1f)));
+        log.close();
+
+        assertEquals(1, files("snapshot-").length);
+        assertEquals(1, files("wal-").length);
+        assertFalse(files("wal-")[0].toString().endsWith("1.log"));
+
+        Map<Long, Metrics> recovered = recover(openLog());
+        assertEquals(2, recovered.size());
+        assertEquals(28f, recovered.get(2000L).getTemperature(), 0f);
+    }
+
+    private FileMeasurementLog openLog() throws IOException {
+        FileMeasurementLog log = new FileMeasurementLog();
+        ReflectionTestUtils.setField(log, "measurementStore", store);
+        ReflectionTestUtils.setField(log, "directory", folder.getRoot().getPath());
+        ReflectionTestUtils.setField(log, "fsyncPolicyName", "always");
+        ReflectionTestUtils.setField(log, "fsyncIntervalMillis", 100L);
+        ReflectionTestUtils.setField(log, "snapshotIntervalMinutes", 60L);
+        log.open();
+        return log;
+    }
+
+    private Map<Long, Metrics> recover(FileMeasurementLog log) throws Exception {
+        Map<Long, Metrics> recovered = new TreeMap<>();
+        log.recover(new MeasurementLog.ReplayHandler() {
+            @Override
+            public void put(long timestamp, Metrics metrics) {
+                recovered.put(timestamp, metrics);
+            }
+
+            @Override
+            public void remove(long timestamp) {
+                recovered.remove(timestamp);
+            }
+        });
+        log.close();
+        return recovered;
+    }
+
+    private Path[] files(String prefix) throws IOException {
+        try (Stream<Path> stream = Files.list(folder.getRoot().toPath())) {
+            return stream.filter(path -> path.getFileName().toString().startsWith(prefix)).sorted().toArray(Path[]::new);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package store.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import model.MetricAccumulator;
+import model.MetricType;
+import model.Metrics;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class LiveWindowsTests {
+
+    private static final Duration MINUTE = Duration.ofMinutes(1);
+
+    private final SkipListMeasurementStore store = new SkipListMeasurementStore();
+
+    private final LiveWindows liveWindows = new LiveWindows("PT1M", 60);
+
+    @Before
+    public void setUp() {
+        ReflectionTestUtils.setField(liveWindows, "measurementStore", store);
+        setClock(100_000L);
+    }
+
+    @Test
+    public void windowShouldFollowWritesLateSamplesAndTheClock() {
+        put(90_000L, 5f);
+        put(99_000L, 9f);
+        put(60_000L, 7f); // late, but still inside the window
+        put(30_000L, 100f); // older than the window
+        assertTemperature(3, 5f, 9f, 21.0);
+
+        remove(99_000L); // the max is taken out, its slot is rebuilt from the store on read
+        assertTemperature(2, 5f, 7f, 12.0);
+        put(90_000L, 6f); // update
+        assertTemperature(2, 6f, 7f, 13.0);
+
+        setClock(140_000L + 500L);
+        assertTemperature(1, 6f, 6f, 6.0);
+        setClock(200_000L);
+        assertTemperature(0, 0f, 0f, 0.0);
+        assertFalse(liveWindows.aggregate(Duration.ofHours(1), new MetricAccumulator[MetricType.values().length]));
+    }
+
+    @Test
+    public void samplesAheadOfTheClockShouldCountOnceReached() {
+        put(105_000L, 4f);
+        assertTemperature(0, 0f, 0f, 0.0);
+
+        setClock(106_000L);
+        assertTemperature(1, 4f, 4f, 4.0);
+        put(105_000L, 3f);
+        assertTemperature(1, 3f, 3f, 3.0);
+    }
+
+    @Test
+    public void concurrentWritersAndBackfillShouldAllBeCounted() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                int offset = thread;
+                writers.add(executor.submit(() -> {
+                    for (int i = 0; i < 5_000; i++) {
+                        put(41_000L + i * 4 + offset, 1f); // every millisecond of the window up to 61,000
+                        put(-1_000_000L - i * 4 - offset, 50f); // backfill far behind the window
+                    }
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTemperature(20_000, 1f, 1f, 20_000.0);
+    }
+
+    private void put(long timestamp, float temperature) {
+        Metrics metrics = new Metrics(temperature, 0f, 0f);
+        liveWindows.beginWrite(timestamp);
+        liveWindows.endWrite(timestamp, store.put(timestamp, metrics), metrics);
+    }
+
+    private void remove(long timestamp) {
+        liveWindows.beginWrite(timestamp);
+        liveWindows.endWrite(timestamp, store.remove(timestamp), null);
+    }
+
+    private void assertTemperature(long count, float min, float max, double sum) {
+        MetricAccumulator[] accumulators = new MetricAccumulator[MetricType.values().length];
+        accumulators[MetricType.TEMPERATURE.ordinal()] = new MetricAccumulator();
+        liveWindows.aggregate(MINUTE, accumulators);
+        MetricAccumulator temperature = accumulators[MetricType.TEMPERATURE.ordinal()];
+        assertEquals(count, temperature.getCount());
+        assertEquals(min, temperature.getMin(), 0f);
+        assertEquals(max, temperature.getMax(), 0f);
+        assertEquals(sum, temperature.getSum(), 1e-9);
+    }
+
+    private void setClock(long millis) {
+        ReflectionTestUtils.setField(liveWindows, "clock", Clock.fixed(Instant.ofEpochMilli(millis), ZoneOffset.UTC));
+    }
+}
@@ -0,0 +1,50 @@
+package store.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import model.MetricAccumulator;
+import org.junit.Test;
+
+public class ScanKernelsTests {
+
+    @Test
+    public void kernelsShouldMatchAcceptingEveryValue() {
+        Random random = new Random(42);
+        int size = 1000;
+        float[] values = new float[size];
+        long[] validity = new long[(size + 63) / 64];
+        for (int i = 0; i < size; i++) {
+            // full words, empty words and mixed words
+            boolean present = i < 300 || (i >= 448 && i < 512) ? false : i < 640 || random.nextInt(4) > 0;
+            if (i >= 384 && i < 448) {
+                present = true;
+            }
+            values[i] = present ? random.nextFloat() * 200 - 100 : 0.0f;
+            if (present) {
+                validity[i >>> 6] |= 1L << i;
+            }
+        }
+
+        int[][] ranges = {{0, size}, {3, 997}, {64, 128}, {250, 700}, {385, 447}, {500, 500}, {999, 1000}};
+        for (int[] range : ranges) {
+            MetricAccumulator expected = new MetricAccumulator();
+            for (int i = range[0]; i < range[1]; i++) {
+                expected.accept(values[i]);
+            }
+            MetricAccumulator withBitmap = new MetricAccumulator();
+            ScanKernels.accumulate(values, validity, range[0], range[1], withBitmap);
+            MetricAccumulator withZeros = new MetricAccumulator();
+            ScanKernels.accumulateNonZero(values, range[0], range[1], withZeros);
+
+            for (MetricAccumulator actual : new MetricAccumulator[]{withBitmap, withZeros}) {
+                assertEquals(expected.getCount(), actual.getCount());
+                assertEquals(expected.getSum(), actual.getSum(), 1e-3);
+                assertEquals(expected.getSumOfSquares(), actual.getSumOfSquares(), 1e-1);
+                assertEquals(expected.getMin(), actual.getMin(), 0.0f);
+                assertEquals(expected.getMax(), actual.getMax(), 0.0f);
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package store.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import model.Metrics;
+import org.junit.Test;
+
+public class SkipListMeasurementStoreTests {
+
+    private final SkipListMeasurementStore store = new SkipListMeasurementStore();
+
+    @Test
+    public void pointOperationsShouldUseEpochMillisKey() {
+        store.put(1000L, new Metrics(27.1f, 16.7f, 0f));
+
+        assertEquals(27.1f, store.get(1000L).getTemperature(), 0f);
+        assertNull(store.get(1001L));
+        assertNull(store.replace(1001L, new Metrics()));
+        assertEquals(27.1f, store.replace(1000L, new Metrics(28f, 17f, 1f)).getTemperature(), 0f);
+        assertEquals(28f, store.remove(1000L).getTemperature(), 0f);
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void scanShouldVisitHalfOpenRangeInTimeOrder() {
+        store.put(300L, new Metrics(3f, 0f, 0f));
+        store.put(100L, new Metrics(1f, 0f, 0f));
+        store.put(200L, new Metrics(2f, 0f, 0f));
+        store.put(400L, new Metrics(4f, 0f, 0f));
+
+        List<Long> visited = new ArrayList<>();
+        store.scan(100L, 400L, (timestamp, metrics) -> visited.add(timestamp));
+
+        assertEquals(3, visited.size());
+        assertEquals(Long.valueOf(100L), visited.get(0));
+        assertEquals(Long.valueOf(300L), visited.get(2));
+    }
+
+    @Test
+    public void concurrentWritersShouldNotLoseEntries() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int thread = 0; thread < 8; thread++) {
+            final long offset = thread * 10_000L;
+            executor.execute(() -> {
+                for (long i = 0; i < 10_000L; i++) {
+                    store.put(offset + i, new Metrics(1f, 1f, 1f));
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(80_000, store.size());
+    }
+}
@@ -0,0 +1,47 @@
+package util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TimestampCodecTests {
+
+    private static final DateTimeFormatter API_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS");
+
+    @Test
+    public void fastPathShouldMatchJavaTime() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            // years 1 to 9999
+            long epochMillis = -62135596800000L + (long) (random.nextDouble() * 315537897600000L);
+            String expected = API_FORMATTER.format(Instant.ofEpochMilli(epochMillis).atOffset(ZoneOffset.UTC)) + "Z";
+
+            assertEquals(expected, TimestampCodec.format(epochMillis));
+            assertEquals(epochMillis, TimestampCodec.parseEpochMillis(expected));
+        }
+    }
+
+    @Test
+    public void otherIsoVariantsShouldParseToSameInstant() {
+        long expected = LocalDateTime.of(2015, 9, 1, 16, 0).toInstant(ZoneOffset.UTC).toEpochMilli();
+
+        assertEquals(expected, TimestampCodec.parseEpochMillis("2015-09-01T16:00:00Z"));
+        assertEquals(expected + 500, TimestampCodec.parseEpochMillis("2015-09-01T16:00:00.5Z"));
+        assertEquals(expected, TimestampCodec.parseEpochMillis("2015-09-01T17:00:00.000+0100"));
+        assertEquals(expected, TimestampCodec.parseEpochMillis("2015-09-01T14:30:00-01:30"));
+        assertEquals(expected, TimestampCodec.parseEpochMillis("2015-09-01T16:00:00.000"));
+        assertEquals("2015-09-01T16:00:00.000Z", TimestampCodec.format(expected));
+    }
+
+    @Test(expected = DateTimeParseException.class)
+    public void invalidTimestampShouldBeRejected() {
+        TimestampCodec.parseEpochMillis("2015-13-01T16:00:00.000Z");
+    }
+}